@@ -0,0 +1,117 @@
+package uk.ac.bradford.ghostgame;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * JMH benchmarks for the turn loop of the GameEngine. Each benchmark runs on
+ * a headless engine so that no time is spent drawing. Run them with
+ * "ant bench", which also enables the GC profiler to report allocation rates.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class GameEngineBenchmark {
+
+    /**
+     * The number of ghosts in the level. Ghosts are spread over the open
+     * tiles returned by getSpawns, so larger counts stack several ghosts on
+     * the same tile.
+     */
+    @Param({"4", "64", "1024"})
+    public int ghostCount;
+
+    /**
+     * The size of the level in tiles, written as the width, an x and the
+     * height. The first is the default size.
+     */
+    @Param({"35x18", "256x256", "4096x4096"})
+    public String levelSize;
+
+    private GameEngine engine;
+
+    /**
+     * Alternates between left and right player moves so that the player
+     * stays in the same area of the level.
+     */
+    private boolean left;
+
+    /**
+     * Starts a new headless game on a level of levelSize and fills the level
+     * with ghostCount ghosts.
+     */
+    @Setup
+    public void setUp() {
+        String[] size = levelSize.split("x");
+        engine = new GameEngine(GameRandom.randomSeed(), Integer.parseInt(size[0]), Integer.parseInt(size[1]));
+        engine.startGame();
+        SpawnPool spawns = engine.getSpawns();
+        Ghost[] ghosts = new Ghost[ghostCount];
+        for (int i = 0; i < ghostCount; i++) {
+            int tile = spawns.get(i % spawns.size());
+            ghosts[i] = new Ghost(100, spawns.x(tile), spawns.y(tile));
+        }
+        engine.setGhosts(ghosts);
+    }
+
+    @Benchmark
+    public int doTurn() {
+        engine.doTurn();
+        return engine.getTurnNumber();
+    }
+
+    @Benchmark
+    public void moveGhosts() {
+        engine.moveGhosts();
+    }
+
+    @Benchmark
+    public void cleanDefeatedGhosts() {
+        engine.cleanDefeatedGhosts();
+    }
+
+    @Benchmark
+    public Object getSpawns() {
+        return engine.getSpawns();
+    }
+
+    @Benchmark
+    public Object generateLevel() {
+        return engine.generateLevel();
+    }
+
+    @Benchmark
+    public Player movePlayer() {
+        if (left) {
+            engine.movePlayerLeft();
+        } else {
+            engine.movePlayerRight();
+        }
+        left = !left;
+        return engine.getPlayer();
+    }
+
+    @Benchmark
+    public Player movePlayerVertical() {
+        if (left) {
+            engine.movePlayerUp();
+        } else {
+            engine.movePlayerDown();
+        }
+        left = !left;
+        return engine.getPlayer();
+    }
+}
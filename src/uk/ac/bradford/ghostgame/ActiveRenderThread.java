@@ -0,0 +1,170 @@
+package uk.ac.bradford.ghostgame;
+
+import java.awt.EventQueue;
+import java.awt.Graphics2D;
+import java.awt.Toolkit;
+import java.awt.image.BufferStrategy;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * The ActiveRenderThread draws a real-time GameGUI at a steady number of
+ * frames per second, independently of the EngineThread playing turns. Each
+ * frame is drawn into the back buffer of a BufferStrategy and then shown, so
+ * nothing waits for Swing to get round to repainting.
+ *
+ * Frames are paced against a fixed schedule rather than by sleeping a fixed
+ * time after each one, so slow frames do not push every later frame back.
+ * The thread sleeps until shortly before a frame is due and then yields
+ * until it is, because sleeps alone can overshoot by a millisecond or more.
+ * If it falls more than a frame behind it starts a new schedule from now
+ * instead of drawing the missed frames back to back.
+ *
+ * The time between the starts of frames and its difference from the target
+ * (the jitter) are measured for every frame. Once a second the frame rate and
+ * the mean and worst jitter of that second are shown in the window title, and
+ * with --metrics both are also recorded in GameMetrics.
+ */
+final class ActiveRenderThread extends Thread {
+
+    /**
+     * How long before a frame is due the thread stops sleeping and starts
+     * yielding.
+     */
+    private static final long SPIN_NANOS = 1000000;
+
+    private static final long SECOND_NANOS = 1000000000L;
+
+    private final GameGUI gui;
+    private final BufferStrategy strategy;
+    private final long frameNanos;
+
+    /**
+     * The title of the window, without the frame rate.
+     */
+    private final String title;
+
+    /**
+     * Frames drawn and jitter seen since the title was last updated.
+     */
+    private int frames;
+    private long jitterSum;
+    private long jitterMax;
+
+    /**
+     * Creates a thread that will draw a GameGUI. The thread is a daemon so
+     * that it does not keep the program running when the GUI is closed.
+     *
+     * @param gui The GUI to draw
+     * @param strategy The BufferStrategy of the GUI's window
+     * @param framesPerSecond The number of frames to draw each second
+     */
+    ActiveRenderThread(GameGUI gui, BufferStrategy strategy, int framesPerSecond) {
+        super("ghostgame-render");
+        this.gui = gui;
+        this.strategy = strategy;
+        this.frameNanos = SECOND_NANOS / framesPerSecond;
+        this.title = gui.getTitle();
+        setDaemon(true);
+    }
+
+    /**
+     * Draws frames until the thread is interrupted.
+     */
+    @Override
+    public void run() {
+        long due = System.nanoTime();
+        long last = 0;
+        long reported = due;
+        while (!isInterrupted()) {
+            long now = System.nanoTime();
+            if (last != 0) {
+                measure(now - last);
+            }
+            last = now;
+            draw(now);
+            if (now - reported >= SECOND_NANOS) {
+                report(now - reported);
+                reported = now;
+            }
+            due += frameNanos;
+            if (System.nanoTime() - due > frameNanos) {
+                due = System.nanoTime();    //too far behind to catch up
+            }
+            waitUntil(due);
+        }
+    }
+
+    /**
+     * Draws one frame into the back buffer and shows it, drawing it again if
+     * the buffer's contents were lost meanwhile.
+     *
+     * @param now The time the frame is drawn for
+     */
+    private void draw(long now) {
+        do {
+            do {
+                Graphics2D g = (Graphics2D) strategy.getDrawGraphics();
+                try {
+                    gui.renderFrame(g, now);
+                } finally {
+                    g.dispose();
+                }
+            } while (strategy.contentsRestored());
+            strategy.show();
+        } while (strategy.contentsLost());
+        Toolkit.getDefaultToolkit().sync();     //flush the frame to the screen now on X11
+    }
+
+    /**
+     * Records the time since the previous frame.
+     *
+     * @param interval The time between the starts of the last two frames
+     */
+    private void measure(long interval) {
+        long jitter = Math.abs(interval - frameNanos);
+        frames++;
+        jitterSum += jitter;
+        jitterMax = Math.max(jitterMax, jitter);
+        if (GameMetrics.isEnabled()) {
+            GameMetrics.FRAME_INTERVAL.record(interval);
+            GameMetrics.FRAME_JITTER.record(jitter);
+        }
+    }
+
+    /**
+     * Shows the frame rate and jitter since the last report in the window
+     * title, and starts counting again.
+     *
+     * @param elapsed The time since the last report
+     */
+    private void report(long elapsed) {
+        final String text = String.format("%s - %.1f fps, jitter mean %.2f ms, max %.2f ms", title,
+                frames * (double) SECOND_NANOS / elapsed,
+                frames == 0 ? 0 : jitterSum / 1e6 / frames, jitterMax / 1e6);
+        EventQueue.invokeLater(new Runnable() {
+            @Override
+            public void run() {
+                gui.setTitle(text);
+            }
+        });
+        frames = 0;
+        jitterSum = 0;
+        jitterMax = 0;
+    }
+
+    /**
+     * Waits until a time, sleeping for most of the wait and yielding for the
+     * rest.
+     *
+     * @param due The value of System.nanoTime to wait for
+     */
+    private void waitUntil(long due) {
+        long remaining;
+        while ((remaining = due - System.nanoTime()) > SPIN_NANOS && !isInterrupted()) {
+            LockSupport.parkNanos(remaining - SPIN_NANOS);
+        }
+        while (due - System.nanoTime() > 0 && !isInterrupted()) {
+            Thread.yield();
+        }
+    }
+}
@@ -0,0 +1,197 @@
+package uk.ac.bradford.ghostgame;
+
+import java.io.PrintStream;
+
+/**
+ * Totals collected by the BatchSimulator over a number of games. Each worker
+ * thread fills its own BatchResult and the results are merged at the end, so
+ * no result is ever shared between threads while games are being played.
+ */
+public final class BatchResult {
+
+    private final int sampleInterval;
+
+    private int games;
+    private long totalTurns;
+    private long totalLevels;
+    private int maxLevel;
+    private long totalGhostsCaptured;
+
+    /**
+     * The number of games that reached the turn limit without running out of
+     * energy.
+     */
+    private int survivors;
+
+    /**
+     * For every sample point (every sampleInterval turns) the sum of the
+     * player's energy over all games still running at that point, and how
+     * many games that was.
+     */
+    private final long[] energySum;
+    private final int[] energyCount;
+
+    /**
+     * Creates an empty result.
+     *
+     * @param maxTurns The turn limit of the games that will be added
+     * @param sampleInterval The number of turns between energy samples
+     */
+    BatchResult(int maxTurns, int sampleInterval) {
+        this.sampleInterval = sampleInterval;
+        energySum = new long[maxTurns / sampleInterval + 1];
+        energyCount = new int[energySum.length];
+    }
+
+    /**
+     * Records the end of one game.
+     *
+     * @param turns The number of turns the game lasted
+     * @param level The level reached
+     * @param ghostsCaptured The number of ghosts captured
+     * @param survived true if the player still had energy when the game
+     * ended
+     */
+    void addGame(int turns, int level, int ghostsCaptured, boolean survived) {
+        games++;
+        totalTurns += turns;
+        totalLevels += level;
+        maxLevel = Math.max(maxLevel, level);
+        totalGhostsCaptured += ghostsCaptured;
+        if (survived) {
+            survivors++;
+        }
+    }
+
+    /**
+     * Records the player's energy at a sample point of a game.
+     *
+     * @param sample The index of the sample point, turn / sampleInterval
+     * @param energy The player's energy at that turn
+     */
+    void addEnergySample(int sample, int energy) {
+        energySum[sample] += energy;
+        energyCount[sample]++;
+    }
+
+    /**
+     * Adds the totals of another result to this one.
+     *
+     * @param other The result to add, which must use the same turn limit and
+     * sample interval
+     * @return this result
+     */
+    BatchResult merge(BatchResult other) {
+        games += other.games;
+        totalTurns += other.totalTurns;
+        totalLevels += other.totalLevels;
+        maxLevel = Math.max(maxLevel, other.maxLevel);
+        totalGhostsCaptured += other.totalGhostsCaptured;
+        survivors += other.survivors;
+        for (int i = 0; i < energySum.length; i++) {
+            energySum[i] += other.energySum[i];
+            energyCount[i] += other.energyCount[i];
+        }
+        return this;
+    }
+
+    /**
+     * Returns the number of games played.
+     *
+     * @return the number of games added to this result
+     */
+    public int getGames() {
+        return games;
+    }
+
+    /**
+     * Returns the number of turns played over all games.
+     *
+     * @return the total number of turns
+     */
+    public long getTotalTurns() {
+        return totalTurns;
+    }
+
+    /**
+     * Returns the average number of turns a game lasted.
+     *
+     * @return the mean number of turns, or 0 if no games were played
+     */
+    public double getMeanTurns() {
+        return games == 0 ? 0 : (double) totalTurns / games;
+    }
+
+    /**
+     * Returns the average level reached.
+     *
+     * @return the mean level, or 0 if no games were played
+     */
+    public double getMeanLevel() {
+        return games == 0 ? 0 : (double) totalLevels / games;
+    }
+
+    /**
+     * Returns the highest level reached in any game.
+     *
+     * @return the highest level
+     */
+    public int getMaxLevel() {
+        return maxLevel;
+    }
+
+    /**
+     * Returns the average number of ghosts captured in a game.
+     *
+     * @return the mean number of ghosts captured, or 0 if no games were
+     * played
+     */
+    public double getMeanGhostsCaptured() {
+        return games == 0 ? 0 : (double) totalGhostsCaptured / games;
+    }
+
+    /**
+     * Returns the number of games that reached the turn limit without running
+     * out of energy.
+     *
+     * @return the number of games survived
+     */
+    public int getSurvivors() {
+        return survivors;
+    }
+
+    /**
+     * Returns the average energy curve: element i is the mean energy of the
+     * player at turn i * sampleInterval, over the games still running then.
+     *
+     * @return the mean energy at each sample point, NaN where no game was
+     * still running
+     */
+    public double[] getMeanEnergyCurve() {
+        double[] curve = new double[energySum.length];
+        for (int i = 0; i < curve.length; i++) {
+            curve[i] = energyCount[i] == 0 ? Double.NaN : (double) energySum[i] / energyCount[i];
+        }
+        return curve;
+    }
+
+    /**
+     * Prints a readable summary of the results.
+     *
+     * @param out The stream to print to
+     */
+    public void print(PrintStream out) {
+        out.printf("games %d, turns %d (mean %.1f), survived %d%n",
+                games, totalTurns, getMeanTurns(), survivors);
+        out.printf("level mean %.2f max %d, ghosts captured mean %.2f%n",
+                getMeanLevel(), maxLevel, getMeanGhostsCaptured());
+        out.print("energy by turn:");
+        double[] curve = getMeanEnergyCurve();
+        for (int i = 0; i < curve.length; i++) {
+            if (!Double.isNaN(curve[i])) {
+                out.printf(" %d:%.0f", i * sampleInterval, curve[i]);
+            }
+        }
+        out.println();
+    }
+}
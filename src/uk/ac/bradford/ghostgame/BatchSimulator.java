@@ -0,0 +1,139 @@
+package uk.ac.bradford.ghostgame;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * The BatchSimulator plays many games without a display, one independent
+ * headless GameEngine per game, spread over all processor cores with a
+ * ForkJoinPool. Game number i of a batch uses the seed firstSeed + i for the
+ * engine and a generator split from that seed for the player, so any single
+ * game of a batch can be replayed on its own.
+ *
+ * Every game runs until the turn limit, or until the player runs out of
+ * energy. Games share nothing while they are played and each worker collects
+ * its own BatchResult, so the batch scales with the number of cores.
+ */
+public class BatchSimulator {
+
+    /**
+     * Ranges of games smaller than this are played on one thread rather than
+     * being split further.
+     */
+    private static final int GAMES_PER_TASK = 4;
+
+    private final PlayerPolicy policy;
+    private final int maxTurns;
+    private final int sampleInterval;
+    private final int levelWidth;
+    private final int levelHeight;
+
+    /**
+     * Creates a simulator.
+     *
+     * @param policy Chooses the player's commands. It is called from many
+     * threads at once, so it must not keep any state between calls.
+     * @param maxTurns The most turns any game is played for
+     * @param sampleInterval The number of turns between samples of the
+     * player's energy
+     */
+    public BatchSimulator(PlayerPolicy policy, int maxTurns, int sampleInterval) {
+        this(policy, maxTurns, sampleInterval, GameEngine.LEVEL_WIDTH, GameEngine.LEVEL_HEIGHT);
+    }
+
+    /**
+     * Creates a simulator that plays games on levels of the given size.
+     *
+     * @param policy Chooses the player's commands. It is called from many
+     * threads at once, so it must not keep any state between calls.
+     * @param maxTurns The most turns any game is played for
+     * @param sampleInterval The number of turns between samples of the
+     * player's energy
+     * @param levelWidth The width of the levels in tiles
+     * @param levelHeight The height of the levels in tiles
+     */
+    public BatchSimulator(PlayerPolicy policy, int maxTurns, int sampleInterval,
+            int levelWidth, int levelHeight) {
+        this.policy = policy;
+        this.maxTurns = maxTurns;
+        this.sampleInterval = sampleInterval;
+        this.levelWidth = levelWidth;
+        this.levelHeight = levelHeight;
+    }
+
+    /**
+     * Plays a batch of games.
+     *
+     * @param firstSeed The seed of the first game; the others use the
+     * following seeds
+     * @param games The number of games to play
+     * @param parallelism The number of threads to use
+     * @return the combined results of all games
+     */
+    public BatchResult run(long firstSeed, int games, int parallelism) {
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            return pool.invoke(new PlayGames(firstSeed, 0, games));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Plays a single game and adds its outcome to a result.
+     *
+     * @param seed The seed for the game
+     * @param result The result to add the game to
+     */
+    void playGame(long seed, BatchResult result) {
+        GameEngine engine = new GameEngine(seed, levelWidth, levelHeight);
+        GameRandom rng = new GameRandom(seed).split();
+        engine.startGame();
+        Player player = engine.getPlayer();
+        int turn = 0;
+        while (turn < maxTurns && player.getEnergy() > 0) {
+            if (turn % sampleInterval == 0) {
+                result.addEnergySample(turn / sampleInterval, player.getEnergy());
+            }
+            engine.playTurn(policy.nextCommand(engine, rng));
+            turn++;
+        }
+        result.addGame(turn, engine.getLevelNumber(), engine.getGhostsCaptured(),
+                player.getEnergy() > 0);
+    }
+
+    /**
+     * Plays the games numbered from to to - 1, splitting the range in half
+     * until it is small enough to play directly.
+     */
+    private class PlayGames extends RecursiveTask<BatchResult> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final long firstSeed;
+        private final int from;
+        private final int to;
+
+        PlayGames(long firstSeed, int from, int to) {
+            this.firstSeed = firstSeed;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected BatchResult compute() {
+            if (to - from <= GAMES_PER_TASK) {
+                BatchResult result = new BatchResult(maxTurns, sampleInterval);
+                for (int i = from; i < to; i++) {
+                    playGame(firstSeed + i, result);
+                }
+                return result;
+            }
+            int mid = (from + to) >>> 1;
+            PlayGames left = new PlayGames(firstSeed, from, mid);
+            left.fork();
+            BatchResult right = new PlayGames(firstSeed, mid, to).compute();
+            return right.merge(left.join());
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package uk.ac.bradford.ghostgame;
+
+/**
+ * A simple scripted PlayerPolicy: while carrying a captured ghost the player
+ * follows the engine's bank distance field to the nearest bank, otherwise it
+ * heads for the nearest ghost. Towards a ghost it steps along whichever axis
+ * is furthest away and tries the other axis if that is blocked, so it can get
+ * stuck behind walls; when it does it makes a random move instead.
+ */
+public final class ChasePolicy implements PlayerPolicy {
+
+    /**
+     * The chance of making a random move even when a step towards the target
+     * is possible, which gets the player out of places where walls block the
+     * direct route.
+     */
+    private static final double RANDOM_MOVE_CHANCE = 0.2;
+
+    private static final Command[] COMMANDS = Command.values();
+
+    /**
+     * Chooses a step towards the current target.
+     *
+     * @param engine The engine playing the game
+     * @param rng The generator used for random moves
+     * @return the Command to play
+     */
+    @Override
+    public Command nextCommand(GameEngine engine, GameRandom rng) {
+        Player p = engine.getPlayer();
+        LevelGrid level = engine.getLevel();
+        int px = p.getX();
+        int py = p.getY();
+        if (p.hasGhost()) {
+            Command step = towardsBank(engine, level, px, py);
+            if (step == null || rng.nextDouble() < RANDOM_MOVE_CHANCE) {
+                return COMMANDS[rng.nextInt(COMMANDS.length)];
+            }
+            return step;
+        }
+        int tx = -1;
+        int ty = -1;
+        int best = Integer.MAX_VALUE;
+        GhostStore ghosts = engine.getGhosts();
+        for (int i = 0; i < ghosts.liveCount(); i++) {
+            int slot = ghosts.liveSlot(i);
+            int d = Math.abs(ghosts.getX(slot) - px) + Math.abs(ghosts.getY(slot) - py);
+            if (d < best) {
+                best = d;
+                tx = ghosts.getX(slot);
+                ty = ghosts.getY(slot);
+            }
+        }
+        if (tx < 0 || rng.nextDouble() < RANDOM_MOVE_CHANCE) {
+            return COMMANDS[rng.nextInt(COMMANDS.length)];
+        }
+        Command horizontal = tx < px ? Command.LEFT : tx > px ? Command.RIGHT : null;
+        Command vertical = ty < py ? Command.UP : ty > py ? Command.DOWN : null;
+        boolean horizontalFirst = Math.abs(tx - px) >= Math.abs(ty - py);
+        Command first = horizontalFirst ? horizontal : vertical;
+        Command second = horizontalFirst ? vertical : horizontal;
+        if (first != null && open(level, px, py, first)) {
+            return first;
+        }
+        if (second != null && open(level, px, py, second)) {
+            return second;
+        }
+        return COMMANDS[rng.nextInt(COMMANDS.length)];
+    }
+
+    /**
+     * Finds the step that goes down the engine's bank distance field, so the
+     * player walks around walls to the nearest bank.
+     *
+     * @return the step to the open neighbour closest to a bank, or null if
+     * no neighbour is closer than the player's own tile
+     */
+    private static Command towardsBank(GameEngine engine, LevelGrid level, int x, int y) {
+        Command best = null;
+        int bestDistance = engine.getBankDistance(x, y);
+        for (Command c : COMMANDS) {
+            Direction d = c.direction();
+            if (c != Command.WAIT && open(level, x, y, c)) {
+                int distance = engine.getBankDistance(x + d.dx(), y + d.dy());
+                if (distance < bestDistance) {
+                    best = c;
+                    bestDistance = distance;
+                }
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Checks whether the player could step in a direction.
+     */
+    private static boolean open(LevelGrid level, int x, int y, Command c) {
+        Direction d = c.direction();
+        return level.isPlayerOpen(x + d.dx(), y + d.dy());
+    }
+}
@@ -0,0 +1,385 @@
+package uk.ac.bradford.ghostgame;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import uk.ac.bradford.ghostgame.GameEngine.TileType;
+
+/**
+ * A ChunkedLevel stores the tiles of a level that is too large to keep in
+ * memory at once, such as 100000 by 100000 tiles. The level is split into
+ * square chunks of CHUNK_SIZE tiles, and each chunk is generated by the
+ * LevelGenerator from the seed, the level number and the chunk's position
+ * alone the first time one of its tiles is read. A chunk therefore looks the
+ * same however many times it is generated, and in whatever order chunks are
+ * visited.
+ *
+ * Chunks that have only been read are kept in a cache of limited size, and
+ * the chunks used longest ago are dropped when it is full; they are simply
+ * generated again if they are needed later. A chunk that has had a tile
+ * changed by set (a sealed breach, for example) can no longer be generated
+ * from the seed, so it is kept for as long as the level exists. Memory use
+ * therefore depends on the area the player and ghosts are active in and the
+ * number of changed chunks, not on the size of the level.
+ *
+ * The tile methods match those of LevelGrid, except that every one of them
+ * except inBounds throws an IndexOutOfBoundsException for a tile outside the
+ * level. region copies any part of the level into a LevelGrid and putRegion
+ * writes the changes made to such a copy back, which is how a LevelWindow
+ * lets a GameEngine play on the level. Like LevelGrid, a ChunkedLevel must
+ * only be used by one thread at a time.
+ */
+public final class ChunkedLevel {
+
+    /**
+     * Chunks are CHUNK_SIZE by CHUNK_SIZE tiles, and CHUNK_SIZE is
+     * 1 &lt;&lt; CHUNK_BITS.
+     */
+    public static final int CHUNK_BITS = 5;
+    public static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
+    /**
+     * One chunk in this many has a bank.
+     */
+    private static final int BANK_ODDS = 4;
+
+    /**
+     * One chunk in this many has a breach.
+     */
+    private static final int BREACH_ODDS = 2;
+
+    private static final TileType[] TYPES = TileType.values();
+    private static final byte WALL = (byte) TileType.WALL.ordinal();
+    private static final byte BREACH = (byte) TileType.BREACH.ordinal();
+    private static final byte DOOR = (byte) TileType.DOOR.ordinal();
+
+    /**
+     * Mixed with the position of a chunk to seed the generator for it.
+     */
+    private final long chunkSeed;
+
+    private final int width;
+    private final int height;
+
+    /**
+     * Chunks with changed tiles, which are never dropped.
+     */
+    private final Map<Long, byte[]> changed = new HashMap<Long, byte[]>();
+
+    /**
+     * Unchanged chunks, in order of last use, the oldest first.
+     */
+    private final LinkedHashMap<Long, byte[]> cached;
+
+    /**
+     * A key no chunk has: the top half of a key is a chunk row, which is
+     * never anywhere near Integer.MIN_VALUE.
+     */
+    private static final long NO_KEY = Long.MIN_VALUE;
+
+    /**
+     * The chunk used by the last call, which the next call very often needs
+     * too, and its key, or NO_KEY.
+     */
+    private long lastKey = NO_KEY;
+    private byte[] lastChunk;
+
+    private long chunksGenerated;
+    private long chunksDropped;
+
+    /**
+     * Creates a level. No chunks are generated until tiles are read.
+     *
+     * @param seed The seed of the game
+     * @param levelNumber The number of the level
+     * @param width The width of the level in tiles, at least 3
+     * @param height The height of the level in tiles, at least 3
+     * @param maxCachedChunks The number of unchanged chunks to keep before
+     * dropping the ones used longest ago
+     */
+    public ChunkedLevel(long seed, int levelNumber, int width, int height, final int maxCachedChunks) {
+        if (width < 3 || height < 3) {
+            throw new IllegalArgumentException("Bad level size " + width + "x" + height);
+        }
+        if (maxCachedChunks < 1) {
+            throw new IllegalArgumentException("Bad chunk cache size " + maxCachedChunks);
+        }
+        chunkSeed = PreparedLevel.levelRandom(seed, levelNumber).nextLong();
+        this.width = width;
+        this.height = height;
+        cached = new LinkedHashMap<Long, byte[]>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, byte[]> eldest) {
+                if (size() > maxCachedChunks) {
+                    chunksDropped++;
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Returns the width of the level.
+     *
+     * @return the width of the level in tiles
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * Returns the height of the level.
+     *
+     * @return the height of the level in tiles
+     */
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Checks whether X,Y is a tile of this level.
+     *
+     * @param x The X co-ordinate of the tile
+     * @param y The Y co-ordinate of the tile
+     * @return true if the tile is inside the level
+     */
+    public boolean inBounds(int x, int y) {
+        return x >= 0 && y >= 0 && x < width && y < height;
+    }
+
+    /**
+     * Returns the type of the tile at X,Y, generating its chunk if needed.
+     *
+     * @param x The X co-ordinate of the tile
+     * @param y The Y co-ordinate of the tile
+     * @return the TileType of the tile
+     * @throws IndexOutOfBoundsException if the tile is outside the level
+     */
+    public TileType get(int x, int y) {
+        return TYPES[code(x, y)];
+    }
+
+    /**
+     * Changes the type of the tile at X,Y. Its chunk is kept from then on.
+     *
+     * @param x The X co-ordinate of the tile
+     * @param y The Y co-ordinate of the tile
+     * @param type The new TileType of the tile
+     * @throws IndexOutOfBoundsException if the tile is outside the level
+     */
+    public void set(int x, int y, TileType type) {
+        //the chunk of a tile just past the edge can be a changed chunk
+        checkBounds(x, y);
+        long key = key(x, y);
+        byte[] chunk = changed.get(key);
+        if (chunk == null) {
+            chunk = chunk(x, y);
+            cached.remove(key);
+            changed.put(key, chunk);
+        }
+        chunk[(y & CHUNK_MASK) << CHUNK_BITS | (x & CHUNK_MASK)] = (byte) type.ordinal();
+    }
+
+    /**
+     * Checks whether the player can move into the tile at X,Y.
+     *
+     * @param x The X co-ordinate of the tile
+     * @param y The Y co-ordinate of the tile
+     * @return true unless the tile is a wall or a breach
+     */
+    public boolean isPlayerOpen(int x, int y) {
+        int code = code(x, y);
+        return code != WALL && code != BREACH;
+    }
+
+    /**
+     * Checks whether a ghost can move into the tile at X,Y.
+     *
+     * @param x The X co-ordinate of the tile
+     * @param y The Y co-ordinate of the tile
+     * @return true unless the tile is a wall
+     */
+    public boolean isGhostOpen(int x, int y) {
+        return code(x, y) != WALL;
+    }
+
+    /**
+     * Checks whether the tile at X,Y is a door.
+     *
+     * @param x The X co-ordinate of the tile
+     * @param y The Y co-ordinate of the tile
+     * @return true if the tile is a door
+     */
+    public boolean isDoor(int x, int y) {
+        return code(x, y) == DOOR;
+    }
+
+    /**
+     * Copies part of the level into a LevelGrid, for example the area around
+     * the player to play on with a GameEngine.
+     *
+     * @param x0 The X co-ordinate of the left column to copy
+     * @param y0 The Y co-ordinate of the top row to copy
+     * @param w The number of columns to copy
+     * @param h The number of rows to copy
+     * @return a new LevelGrid of w by h tiles; tiles outside this level are
+     * walls
+     */
+    public LevelGrid region(int x0, int y0, int w, int h) {
+        byte[] t = new byte[w * h];
+        Arrays.fill(t, WALL);
+        int left = Math.max(x0, 0);
+        int top = Math.max(y0, 0);
+        int right = Math.min(x0 + w, width);
+        int bottom = Math.min(y0 + h, height);
+        //copy a chunk at a time, so each chunk is only looked up once
+        for (int cy = top & ~CHUNK_MASK; cy < bottom; cy += CHUNK_SIZE) {
+            for (int cx = left & ~CHUNK_MASK; cx < right; cx += CHUNK_SIZE) {
+                byte[] chunk = chunk(cx, cy);
+                int xs = Math.max(cx, left);
+                int xe = Math.min(cx + CHUNK_SIZE, right);
+                for (int y = Math.max(cy, top); y < Math.min(cy + CHUNK_SIZE, bottom); y++) {
+                    System.arraycopy(chunk, (y - cy) << CHUNK_BITS | (xs - cx),
+                            t, (y - y0) * w + xs - x0, xe - xs);
+                }
+            }
+        }
+        return new LevelGrid(w, h, t);
+    }
+
+    /**
+     * Writes a copy made by region back into the level. Only tiles that
+     * differ from the level are set, so only chunks in which the copy was
+     * changed are kept from then on. Tiles of the copy outside this level
+     * are ignored.
+     *
+     * @param x0 The X co-ordinate of the left column of the copy
+     * @param y0 The Y co-ordinate of the top row of the copy
+     * @param grid The copy
+     */
+    public void putRegion(int x0, int y0, LevelGrid grid) {
+        if (grid.getModCount() == 0) {
+            return;     //nothing has been changed since region made it
+        }
+        int right = Math.min(x0 + grid.getWidth(), width);
+        int bottom = Math.min(y0 + grid.getHeight(), height);
+        for (int y = Math.max(y0, 0); y < bottom; y++) {
+            for (int x = Math.max(x0, 0); x < right; x++) {
+                TileType type = grid.get(x - x0, y - y0);
+                if (code(x, y) != type.ordinal()) {
+                    set(x, y, type);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the number of chunks in memory, changed or not.
+     *
+     * @return the number of chunks held
+     */
+    public int getChunksHeld() {
+        return changed.size() + cached.size();
+    }
+
+    /**
+     * Returns the number of chunks with changed tiles.
+     *
+     * @return the number of chunks that are never dropped
+     */
+    public int getChunksChanged() {
+        return changed.size();
+    }
+
+    /**
+     * Returns the number of times a chunk has been generated, including
+     * chunks generated again after being dropped.
+     *
+     * @return the number of chunks generated so far
+     */
+    public long getChunksGenerated() {
+        return chunksGenerated;
+    }
+
+    /**
+     * Returns the number of times an unchanged chunk has been dropped from
+     * memory to make room for another.
+     *
+     * @return the number of chunks dropped so far
+     */
+    public long getChunksDropped() {
+        return chunksDropped;
+    }
+
+    /**
+     * Returns the code of the tile at X,Y.
+     */
+    private int code(int x, int y) {
+        return chunk(x, y)[(y & CHUNK_MASK) << CHUNK_BITS | (x & CHUNK_MASK)];
+    }
+
+    /**
+     * Finds the chunk holding the tile at X,Y: the last chunk used, a changed
+     * chunk, a cached chunk or, failing those, a newly generated chunk which
+     * is added to the cache.
+     *
+     * @throws IndexOutOfBoundsException if the tile is outside the level
+     */
+    private byte[] chunk(int x, int y) {
+        checkBounds(x, y);
+        long key = key(x, y);
+        if (key == lastKey) {
+            return lastChunk;
+        }
+        byte[] chunk = changed.get(key);
+        if (chunk == null) {
+            chunk = cached.get(key);
+            if (chunk == null) {
+                chunk = generate(x >> CHUNK_BITS, y >> CHUNK_BITS);
+                cached.put(key, chunk);
+            }
+        }
+        lastKey = key;
+        lastChunk = chunk;
+        return chunk;
+    }
+
+    /**
+     * Checks that X,Y is a tile of this level.
+     *
+     * @throws IndexOutOfBoundsException if the tile is outside the level
+     */
+    private void checkBounds(int x, int y) {
+        if (!inBounds(x, y)) {
+            throw new IndexOutOfBoundsException("Tile " + x + "," + y + " is outside the level");
+        }
+    }
+
+    /**
+     * Generates a chunk from the seed, the level number and the chunk's
+     * position.
+     */
+    private byte[] generate(int cx, int cy) {
+        chunksGenerated++;
+        GameRandom rng = new GameRandom(GameRandom.mix64(chunkSeed ^ ((long) cy << 32 | cx)));
+        boolean bank = rng.nextInt(BANK_ODDS) == 0;
+        int breaches = rng.nextInt(BREACH_ODDS) == 0 ? 1 : 0;
+        return LevelGenerator.generateChunk(rng, CHUNK_SIZE, cx << CHUNK_BITS, cy << CHUNK_BITS,
+                width, height, bank, breaches);
+    }
+
+    /**
+     * Returns the key of the chunk holding the tile at X,Y: its row in the
+     * top half and its column in the bottom half.
+     *
+     * @param x The X co-ordinate of the tile
+     * @param y The Y co-ordinate of the tile
+     * @return the key of the tile's chunk, the same for every tile in it
+     */
+    static long key(int x, int y) {
+        return (long) (y >> CHUNK_BITS) << 32 | ((x >> CHUNK_BITS) & 0xFFFFFFFFL);
+    }
+}
@@ -0,0 +1,70 @@
+package uk.ac.bradford.ghostgame;
+
+/**
+ * The commands a player can give in one turn, one for every Direction. Every
+ * key press is turned into one of these and passed to the engine, which moves
+ * the player (unless the command is WAIT) and then processes the rest of the
+ * turn.
+ *
+ * Each command has a fixed one byte code that is used in replay files, so
+ * the codes of existing commands must never change.
+ */
+public enum Command {
+    LEFT(0, Direction.LEFT), RIGHT(1, Direction.RIGHT), UP(2, Direction.UP),
+    DOWN(3, Direction.DOWN), WAIT(4, Direction.WAIT),
+    UP_LEFT(5, Direction.UP_LEFT), UP_RIGHT(6, Direction.UP_RIGHT),
+    DOWN_LEFT(7, Direction.DOWN_LEFT), DOWN_RIGHT(8, Direction.DOWN_RIGHT);
+
+    /**
+     * Commands indexed by their code.
+     */
+    private static final Command[] BY_CODE;
+
+    static {
+        Command[] all = values();
+        BY_CODE = new Command[all.length];
+        for (Command c : all) {
+            BY_CODE[c.code] = c;
+        }
+    }
+
+    private final byte code;
+    private final Direction direction;
+
+    Command(int code, Direction direction) {
+        this.code = (byte) code;
+        this.direction = direction;
+    }
+
+    /**
+     * Returns the one byte code of this command.
+     *
+     * @return the code stored for this command in replay files
+     */
+    public byte code() {
+        return code;
+    }
+
+    /**
+     * Returns the direction the player moves in for this command.
+     *
+     * @return the Direction passed to GameEngine.move
+     */
+    public Direction direction() {
+        return direction;
+    }
+
+    /**
+     * Finds the command with a code.
+     *
+     * @param code A code returned by code()
+     * @return the command with that code
+     * @throws IllegalArgumentException if no command has that code
+     */
+    public static Command fromCode(byte code) {
+        if (code < 0 || code >= BY_CODE.length) {
+            throw new IllegalArgumentException("Unknown command code " + code);
+        }
+        return BY_CODE[code];
+    }
+}
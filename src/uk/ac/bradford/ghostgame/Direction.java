@@ -0,0 +1,40 @@
+package uk.ac.bradford.ghostgame;
+
+/**
+ * The directions the player can move in during a turn, each stored as the
+ * change in X and Y it makes to the player's position. The four arrow key
+ * directions, the four diagonals and WAIT (no movement) all go through the
+ * same GameEngine.move method, which reads dx and dy instead of having code
+ * for each direction.
+ */
+public enum Direction {
+    LEFT(-1, 0), RIGHT(1, 0), UP(0, -1), DOWN(0, 1),
+    UP_LEFT(-1, -1), UP_RIGHT(1, -1), DOWN_LEFT(-1, 1), DOWN_RIGHT(1, 1),
+    WAIT(0, 0);
+
+    private final int dx;
+    private final int dy;
+
+    Direction(int dx, int dy) {
+        this.dx = dx;
+        this.dy = dy;
+    }
+
+    /**
+     * Returns the change in X co-ordinate for one step in this direction.
+     *
+     * @return -1, 0 or 1
+     */
+    public int dx() {
+        return dx;
+    }
+
+    /**
+     * Returns the change in Y co-ordinate for one step in this direction.
+     *
+     * @return -1, 0 or 1
+     */
+    public int dy() {
+        return dy;
+    }
+}
@@ -0,0 +1,196 @@
+package uk.ac.bradford.ghostgame;
+
+import java.util.Arrays;
+
+/**
+ * A DistanceField stores, for every tile of a level, the number of steps a
+ * ghost needs to reach the nearest of a set of source tiles, moving one tile
+ * left, right, up or down at a time through tiles that ghosts can enter.
+ * It is filled by a single breadth first search over the level, after which
+ * any ghost can find the distance from any neighbouring tile in constant
+ * time. One search per turn serves every ghost, however many there are.
+ *
+ * The arrays are allocated once for a level size and reused by every call to
+ * compute, so computing a field allocates nothing. Instead of clearing the
+ * distances before every search, each search has a new generation number and
+ * a tile's distance only counts if it was written by the current generation.
+ * A search limited to a maximum distance therefore only costs as much as the
+ * tiles it reaches, not the size of the level.
+ */
+final class DistanceField {
+
+    /**
+     * The distance of tiles that cannot be reached from any source, including
+     * walls.
+     */
+    static final int UNREACHABLE = Integer.MAX_VALUE;
+
+    private final int width;
+    private final int height;
+
+    /**
+     * The distance of every tile, row by row.
+     */
+    private final int[] dist;
+
+    /**
+     * The generation that wrote the distance of every tile, row by row.
+     */
+    private final int[] written;
+
+    /**
+     * The generation of the current search.
+     */
+    private int generation;
+
+    /**
+     * Tile indexes waiting to be visited by the search.
+     */
+    private final int[] queue;
+
+    /**
+     * Creates a field for a level of the given size. Every tile is
+     * UNREACHABLE until compute is called.
+     *
+     * @param width The width of the level in tiles
+     * @param height The height of the level in tiles
+     */
+    DistanceField(int width, int height) {
+        this.width = width;
+        this.height = height;
+        dist = new int[width * height];
+        written = new int[width * height];
+        queue = new int[width * height];
+    }
+
+    /**
+     * Checks whether this field was made for a level of a given size, so
+     * that it can be reused for that level instead of allocating another.
+     *
+     * @param width The width of the level in tiles
+     * @param height The height of the level in tiles
+     * @return true if the field has exactly that size
+     */
+    boolean hasSize(int width, int height) {
+        return this.width == width && this.height == height;
+    }
+
+    /**
+     * Fills the field with the distance from a single tile.
+     *
+     * @param level The level to search
+     * @param x The X co-ordinate of the source tile
+     * @param y The Y co-ordinate of the source tile
+     */
+    void compute(LevelGrid level, int x, int y) {
+        compute(level, x, y, UNREACHABLE - 1);
+    }
+
+    /**
+     * Fills the field with the distance from a single tile, stopping the
+     * search at a maximum distance. Tiles further away than maxDistance are
+     * UNREACHABLE.
+     *
+     * @param level The level to search
+     * @param x The X co-ordinate of the source tile
+     * @param y The Y co-ordinate of the source tile
+     * @param maxDistance The largest distance to work out
+     */
+    void compute(LevelGrid level, int x, int y, int maxDistance) {
+        newGeneration();
+        mark(y * width + x, 0);
+        queue[0] = y * width + x;
+        search(level, 1, maxDistance);
+    }
+
+    /**
+     * Fills the field with the distance from the nearest tile of a type, for
+     * example the distance to the nearest bank.
+     *
+     * @param level The level to search
+     * @param type The TileType of the source tiles
+     */
+    void compute(LevelGrid level, GameEngine.TileType type) {
+        newGeneration();
+        int tail = 0;
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                if (level.get(x, y) == type) {
+                    mark(y * width + x, 0);
+                    queue[tail++] = y * width + x;
+                }
+            }
+        }
+        search(level, tail, UNREACHABLE - 1);
+    }
+
+    /**
+     * Returns the distance of a tile.
+     *
+     * @param x The X co-ordinate of the tile
+     * @param y The Y co-ordinate of the tile
+     * @return the number of steps from the nearest source, or UNREACHABLE
+     */
+    int get(int x, int y) {
+        int i = y * width + x;
+        return written[i] == generation ? dist[i] : UNREACHABLE;
+    }
+
+    /**
+     * Starts a new search, which makes every tile UNREACHABLE until the
+     * search reaches it.
+     */
+    private void newGeneration() {
+        generation++;
+        if (generation == 0) {
+            //the counter wrapped around, old stamps could look current
+            Arrays.fill(written, 0);
+            generation = 1;
+        }
+    }
+
+    private void mark(int i, int d) {
+        dist[i] = d;
+        written[i] = generation;
+    }
+
+    private boolean unvisited(int i) {
+        return written[i] != generation;
+    }
+
+    /**
+     * Runs the breadth first search from the sources already in the queue.
+     *
+     * @param level The level to search
+     * @param tail The number of sources in the queue
+     * @param maxDistance The search does not go beyond this distance
+     */
+    private void search(LevelGrid level, int tail, int maxDistance) {
+        int head = 0;
+        while (head < tail) {
+            int i = queue[head++];
+            int d = dist[i] + 1;
+            if (d > maxDistance) {
+                break;      //the queue is in distance order, nothing closer is left
+            }
+            int x = i % width;
+            int y = i / width;
+            if (x > 0 && unvisited(i - 1) && level.isGhostOpen(x - 1, y)) {
+                mark(i - 1, d);
+                queue[tail++] = i - 1;
+            }
+            if (x < width - 1 && unvisited(i + 1) && level.isGhostOpen(x + 1, y)) {
+                mark(i + 1, d);
+                queue[tail++] = i + 1;
+            }
+            if (y > 0 && unvisited(i - width) && level.isGhostOpen(x, y - 1)) {
+                mark(i - width, d);
+                queue[tail++] = i - width;
+            }
+            if (y < height - 1 && unvisited(i + width) && level.isGhostOpen(x, y + 1)) {
+                mark(i + width, d);
+                queue[tail++] = i + width;
+            }
+        }
+    }
+}
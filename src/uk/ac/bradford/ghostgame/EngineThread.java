@@ -0,0 +1,241 @@
+package uk.ac.bradford.ghostgame;
+
+import java.io.IOException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The EngineThread runs a GameEngine on its own thread. Key presses are turned
+ * into Commands on the Swing event dispatch thread and queued here; this
+ * thread takes them from the queue one at a time and plays a turn for each.
+ * The GUI is only ever given Frame snapshots, so slow turns never block the
+ * GUI and the GUI never reads engine state that is being changed.
+ *
+ * In real-time play the thread instead plays turns at a fixed rate, the
+ * same number every second whether keys are pressed or not: each tick takes
+ * the oldest waiting command, or WAIT if there is none. Ticks follow a fixed
+ * schedule, so a slow turn is made up by starting the next one sooner, but if
+ * the thread falls more than MAX_LAG_TICKS behind the missed ticks are
+ * dropped. Only MAX_QUEUED_COMMANDS commands are kept waiting, so holding a
+ * key down does not build up moves that are played long after the key is let
+ * go.
+ *
+ * If a ReplayRecorder is given, every command is recorded just before it is
+ * played. In real-time play that includes the WAIT of every tick without a
+ * key press, so the replay plays the same game. Recorded commands are written
+ * to the file at most FLUSH_NANOS after they are played, whenever the thread
+ * is idle waiting for a key press, and when the thread stops, which closes
+ * the recorder.
+ */
+public class EngineThread extends Thread {
+
+    /**
+     * The most ticks real-time play can fall behind before ticks are dropped.
+     */
+    private static final int MAX_LAG_TICKS = 5;
+
+    /**
+     * The most commands kept waiting in real-time play.
+     */
+    private static final int MAX_QUEUED_COMMANDS = 2;
+
+    /**
+     * The longest time recorded commands are kept in memory before they are
+     * flushed to the replay file.
+     */
+    private static final long FLUSH_NANOS = 1000000000L;
+
+    private final GameEngine engine;
+
+    /**
+     * The number of nanoseconds between ticks in real-time play, or 0 to
+     * play a turn only when a command arrives.
+     */
+    private final long tickNanos;
+
+    /**
+     * Commands waiting to be played, oldest first.
+     */
+    private final BlockingQueue<Command> commands = new LinkedBlockingQueue<Command>();
+
+    /**
+     * Records the commands played, or null if the game is not recorded. Set
+     * to null if writing the recording fails, so the game carries on.
+     */
+    private ReplayRecorder recorder;
+
+    /**
+     * The value of System.nanoTime when the recorder was last flushed.
+     */
+    private long flushed;
+
+    /**
+     * Creates a thread that will start and then run the given engine. The
+     * thread is a daemon so that it does not keep the program running when the
+     * GUI is closed.
+     *
+     * @param engine The GameEngine this thread runs
+     */
+    public EngineThread(GameEngine engine) {
+        this(engine, null);
+    }
+
+    /**
+     * Creates a thread that will start and then run the given engine,
+     * recording every command it plays.
+     *
+     * @param engine The GameEngine this thread runs
+     * @param recorder The recorder to write commands to, or null
+     */
+    public EngineThread(GameEngine engine, ReplayRecorder recorder) {
+        this(engine, recorder, 0);
+    }
+
+    /**
+     * Creates a thread that will start and then run the given engine in real
+     * time, playing a fixed number of turns every second.
+     *
+     * @param engine The GameEngine this thread runs
+     * @param recorder The recorder to write commands to, or null
+     * @param ticksPerSecond The number of turns to play each second, or 0 to
+     * play a turn for each command as it arrives
+     */
+    public EngineThread(GameEngine engine, ReplayRecorder recorder, int ticksPerSecond) {
+        super("ghostgame-engine");
+        this.engine = engine;
+        this.recorder = recorder;
+        this.tickNanos = ticksPerSecond > 0 ? 1000000000L / ticksPerSecond : 0;
+        setDaemon(true);
+    }
+
+    /**
+     * Queues a command to be played as the next turn. Safe to call from any
+     * thread; it never waits for the turn to be played.
+     *
+     * @param c The command to play
+     */
+    public void submit(Command c) {
+        commands.add(c);
+    }
+
+    /**
+     * Starts the game and then plays every command submitted to this thread,
+     * or in real-time play a turn every tick, until the thread is
+     * interrupted. The recorder, if any, is closed when the thread stops.
+     */
+    @Override
+    public void run() {
+        flushed = System.nanoTime();
+        engine.startGame();
+        try {
+            if (tickNanos != 0) {
+                runTicks();
+            } else {
+                while (true) {
+                    Command c = commands.poll();
+                    if (c == null) {
+                        flush();    //nothing to play until the next key press
+                        c = commands.take();
+                    }
+                    record(c);
+                    engine.playTurn(c);
+                }
+            }
+        } catch (InterruptedException e) {
+            //interrupted, stop processing turns
+        } finally {
+            closeRecorder();
+        }
+    }
+
+    /**
+     * Plays a turn every tick until the thread is interrupted.
+     *
+     * @throws InterruptedException when the thread is interrupted
+     */
+    private void runTicks() throws InterruptedException {
+        long due = System.nanoTime();
+        while (true) {
+            while (commands.size() > MAX_QUEUED_COMMANDS) {
+                commands.poll();    //drop the oldest
+            }
+            Command c = commands.poll();
+            if (c == null) {
+                c = Command.WAIT;
+            }
+            record(c);
+            engine.playTurn(c);
+            due += tickNanos;
+            long wait = due - System.nanoTime();
+            if (wait > 0) {
+                TimeUnit.NANOSECONDS.sleep(wait);
+            } else if (-wait > MAX_LAG_TICKS * tickNanos) {
+                due = System.nanoTime();    //give up on the missed ticks
+            } else if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+        }
+    }
+
+    /**
+     * Records a command if the game is being recorded, and flushes the
+     * recorder if it has not been flushed for FLUSH_NANOS.
+     *
+     * @param c The command about to be played
+     */
+    private void record(Command c) {
+        if (recorder != null) {
+            try {
+                recorder.record(c);
+            } catch (IOException e) {
+                stopRecording(e);
+                return;
+            }
+            if (System.nanoTime() - flushed >= FLUSH_NANOS) {
+                flush();
+            }
+        }
+    }
+
+    /**
+     * Writes the recorded commands to the replay file, if the game is being
+     * recorded.
+     */
+    private void flush() {
+        if (recorder != null) {
+            try {
+                recorder.flush();
+            } catch (IOException e) {
+                stopRecording(e);
+            }
+        }
+        flushed = System.nanoTime();
+    }
+
+    /**
+     * Flushes and closes the recorder, if the game is being recorded.
+     */
+    private void closeRecorder() {
+        if (recorder != null) {
+            try {
+                recorder.close();
+            } catch (IOException e) {
+                stopRecording(e);
+            }
+            recorder = null;
+        }
+    }
+
+    /**
+     * Reports a failure to write the recording and stops recording, so the
+     * game carries on without it.
+     *
+     * @param e The exception thrown by the recorder
+     */
+    private void stopRecording(IOException e) {
+        System.out.println("Exception recording replay: " + e.getMessage());
+        e.printStackTrace(System.out);
+        recorder = null;
+    }
+}
@@ -0,0 +1,145 @@
+package uk.ac.bradford.ghostgame;
+
+import java.util.Arrays;
+
+/**
+ * A Frame is an immutable snapshot of everything that is drawn on screen:
+ * the level tiles, the player and the ghosts at the end of a turn. The engine
+ * thread creates a Frame after every turn and hands it to the GUI, so the GUI
+ * never reads the engine's own objects while the engine is changing them.
+ *
+ * Ghosts are stored in parallel arrays; ghost i is at ghostX[i], ghostY[i].
+ *
+ * A Frame can also record where the player and every ghost were in the
+ * previous frame (the "from" positions), so that a display drawing more often
+ * than turns are played can slide them smoothly from one tile to the next.
+ * Entities that are new, or that jumped further than MAX_SLIDE tiles, start
+ * from where they are now.
+ */
+final class Frame {
+
+    /**
+     * The most tiles, across and down added together, that an entity can
+     * slide between two frames. Fast ghosts move twice a turn; anything
+     * further is a new ghost in a reused slot or a new level.
+     */
+    static final int MAX_SLIDE = 2;
+
+    /**
+     * A copy of the level tiles. It must not be changed once the Frame has
+     * been created. Consecutive frames share the same copy while the level
+     * itself has not changed.
+     */
+    final LevelGrid level;
+
+    /**
+     * The value of System.nanoTime when the frame was created.
+     */
+    final long time;
+
+    /**
+     * Identifies the level the tiles belong to. It changes when the engine
+     * moves on to a new level, but not when tiles of the same level change.
+     */
+    final int levelGeneration;
+
+    final boolean hasPlayer;
+    final int playerX;
+    final int playerY;
+    final int playerEnergy;
+    final int playerMaxEnergy;
+    final boolean playerHasGhost;
+    final int playerFromX;
+    final int playerFromY;
+
+    final int ghostCount;
+    final int[] ghostX;
+    final int[] ghostY;
+    final int[] ghostHealth;
+    final int[] ghostMaxHealth;
+    final int[] ghostSlot;
+    final int[] ghostFromX;
+    final int[] ghostFromY;
+
+    /**
+     * Creates a snapshot of the player and ghosts. The caller provides the
+     * copy of the level so that it can reuse copies between frames.
+     *
+     * @param level A copy of the current level, or null
+     * @param levelGeneration Identifies which level the tiles belong to
+     * @param player The player to copy, or null
+     * @param ghosts The ghost store to copy the live ghosts from, or null
+     * @param previous The frame before this one to take the from positions
+     * from, or null to make them the same as the current positions
+     */
+    Frame(LevelGrid level, int levelGeneration, Player player, GhostStore ghosts, Frame previous) {
+        time = System.nanoTime();
+        this.level = level;
+        this.levelGeneration = levelGeneration;
+        hasPlayer = player != null;
+        playerX = hasPlayer ? player.getX() : -1;
+        playerY = hasPlayer ? player.getY() : -1;
+        playerEnergy = hasPlayer ? player.getEnergy() : 0;
+        playerMaxEnergy = hasPlayer ? player.getMaxEnergy() : 1;
+        playerHasGhost = hasPlayer && player.hasGhost();
+        int n = ghosts != null ? ghosts.liveCount() : 0;
+        ghostCount = n;
+        ghostX = new int[n];
+        ghostY = new int[n];
+        ghostHealth = new int[n];
+        ghostMaxHealth = new int[n];
+        ghostSlot = new int[n];
+        for (int i = 0; i < n; i++) {
+            int slot = ghosts.liveSlot(i);
+            ghostX[i] = ghosts.getX(slot);
+            ghostY[i] = ghosts.getY(slot);
+            ghostHealth[i] = ghosts.getHealth(slot);
+            ghostMaxHealth[i] = ghosts.getMaxHealth(slot);
+            ghostSlot[i] = slot;
+        }
+        if (previous == null || previous.levelGeneration != levelGeneration) {
+            previous = null;
+        }
+        if (previous != null && previous.hasPlayer && slides(previous.playerX, previous.playerY, playerX, playerY)) {
+            playerFromX = previous.playerX;
+            playerFromY = previous.playerY;
+        } else {
+            playerFromX = playerX;
+            playerFromY = playerY;
+        }
+        if (previous == null) {
+            ghostFromX = ghostX;
+            ghostFromY = ghostY;
+            return;
+        }
+        ghostFromX = ghostX.clone();
+        ghostFromY = ghostY.clone();
+        //the previous index of every slot, so each ghost is found in one step
+        int slots = 0;
+        for (int i = 0; i < n; i++) {
+            slots = Math.max(slots, ghostSlot[i] + 1);
+        }
+        int[] index = new int[slots];
+        Arrays.fill(index, -1);
+        for (int i = 0; i < previous.ghostCount; i++) {
+            if (previous.ghostSlot[i] < slots) {
+                index[previous.ghostSlot[i]] = i;
+            }
+        }
+        for (int i = 0; i < n; i++) {
+            int j = index[ghostSlot[i]];
+            if (j >= 0 && slides(previous.ghostX[j], previous.ghostY[j], ghostX[i], ghostY[i])) {
+                ghostFromX[i] = previous.ghostX[j];
+                ghostFromY[i] = previous.ghostY[j];
+            }
+        }
+    }
+
+    /**
+     * Checks whether an entity that moved between two tiles can be shown
+     * sliding from one to the other.
+     */
+    private static boolean slides(int fromX, int fromY, int x, int y) {
+        return Math.abs(x - fromX) + Math.abs(y - fromY) <= MAX_SLIDE;
+    }
+}
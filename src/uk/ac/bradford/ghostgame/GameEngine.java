@@ -1,8 +1,7 @@
 package uk.ac.bradford.ghostgame;
 
-import java.awt.Point;
-import java.util.ArrayList;
-import java.util.Random;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
 
 /**
  * The GameEngine class is responsible for managing information about the game,
@@ -27,28 +26,97 @@ public class GameEngine {
     }
 
     /**
-     * The width of the level, measured in tiles. Changing this may cause the
-     * display to draw incorrectly, and as a minimum the size of the GUI would
-     * need to be adjusted.
+     * The width of a level in tiles, for engines created without a level
+     * size.
      */
     public static final int LEVEL_WIDTH = 35;
 
     /**
-     * The height of the level, measured in tiles. Changing this may cause the
-     * display to draw incorrectly, and as a minimum the size of the GUI would
-     * need to be adjusted.
+     * The height of a level in tiles, for engines created without a level
+     * size.
      */
     public static final int LEVEL_HEIGHT = 18;
 
     /**
-     * A random number generator that can be used to include randomised choices
-     * in the creation of levels, in choosing places to spawn the player and
-     * ghosts, and to randomise movement and damage. Passing an integer (e.g.
-     * 123) to the constructor called here will give fixed results - the same
-     * numbers will be generated every time - WHICH CAN BE VERY USEFUL FOR
-     * TESTING AND BUGFIXING!
+     * The smallest and largest width or height of a level, in tiles. Smaller
+     * levels may not have room for the bank, the player and the ghosts.
      */
-    private Random rng = new Random();
+    public static final int MIN_LEVEL_SIZE = 8;
+    public static final int MAX_LEVEL_SIZE = 4096;
+
+    /**
+     * The first four bytes of every snapshot ("GHSS" in ASCII) and the
+     * version of the snapshot layout. The version must be increased whenever
+     * the layout written by snapshot changes.
+     */
+    static final int SNAPSHOT_MAGIC = 0x47485353;
+    static final byte SNAPSHOT_VERSION = 4;
+
+    /**
+     * The number of clock ticks in a turn. The player acts once a turn, when
+     * a command is played, and every ghost acts whenever the clock reaches
+     * its due time, then waits its delay before acting again. A ghost with a
+     * delay of TICKS_PER_TURN therefore moves as often as the player.
+     */
+    public static final int TICKS_PER_TURN = 12;
+
+    /**
+     * The delays of the three kinds of ghost: slow ghosts act every other
+     * turn, normal ghosts once a turn and fast ghosts twice a turn.
+     */
+    public static final int GHOST_DELAY_SLOW = 2 * TICKS_PER_TURN;
+    public static final int GHOST_DELAY_NORMAL = TICKS_PER_TURN;
+    public static final int GHOST_DELAY_FAST = TICKS_PER_TURN / 2;
+
+    /**
+     * The activity distance of an engine that has not been given one: ghosts
+     * more than this many tiles from the player across or down (whichever is
+     * further) are dormant. See setActivityDistance. It is larger than a
+     * level of the default size, so ghosts only go dormant on larger levels.
+     */
+    public static final int DEFAULT_ACTIVITY_DISTANCE = 40;
+
+    /**
+     * Ghosts this many steps or fewer from the player (walking around walls)
+     * run away from the player instead of wandering.
+     */
+    private static final int GHOST_FLEE_DISTANCE = 3;
+
+    /**
+     * The chance that a wandering ghost tries to move in a turn.
+     */
+    private static final double GHOST_WANDER_CHANCE = 0.6;
+
+    /**
+     * The change in X and Y for the four directions a ghost can move in:
+     * left, right, up and down.
+     */
+    private static final int[] GHOST_DX = {-1, 1, 0, 0};
+    private static final int[] GHOST_DY = {0, 0, -1, 1};
+
+    /**
+     * A random number generator that is used for all randomised choices in
+     * the game: the creation of levels, choosing places to spawn the player
+     * and ghosts, and randomising movement and damage. Every engine has its
+     * own generator created from the seed passed to the constructor, so the
+     * same seed and the same player moves always give the same game - WHICH
+     * CAN BE VERY USEFUL FOR TESTING AND BUGFIXING! It also means engines
+     * running in parallel never share a generator.
+     */
+    private final GameRandom rng;
+
+    /**
+     * The seed the random number generator was created with. It only changes
+     * when a snapshot of another game is restored.
+     */
+    private long seed;
+
+    /**
+     * The size of every level of this game, in tiles. It only changes when a
+     * snapshot of another game is restored.
+     */
+    private int levelWidth;
+    private int levelHeight;
 
     /**
      * The current level number for the game. As the player completes levels the
@@ -65,23 +133,54 @@ public class GameEngine {
     private int turnNumber = 1;
 
     /**
-     * The GUI associated with a GameEngine object. This link allows the engine
-     * to pass level (level) and entity information to the GUI to be drawn.
+     * The game clock, in ticks since the current level started. Moved on by
+     * TICKS_PER_TURN every turn.
+     */
+    private long clock;
+
+    /**
+     * Ghosts further than this from the player are dormant. Part of the
+     * game state, since it changes how ghosts move.
+     */
+    private int activityDistance = DEFAULT_ACTIVITY_DISTANCE;
+
+    /**
+     * Where the player was when dormant ghosts near the player were last
+     * woken, or NO_POSITION to look at the whole activity region next turn.
      */
-    private GameGUI gui;
+    private static final int NO_POSITION = Integer.MIN_VALUE;
+    private int activeX = NO_POSITION;
+    private int activeY = NO_POSITION;
 
     /**
-     * The 2 dimensional array of level the represent the current level. The
-     * size of this array should use the LEVEL_HEIGHT and LEVEL_WIDTH attributes
-     * when it is created.
+     * The number of ghosts the player has captured since the game started.
      */
-    private TileType[][] level;
+    private int ghostsCaptured;
 
     /**
-     * An ArrayList of Point objects used to create and track possible locations
-     * to place the player and ghosts when a new level is created.
+     * Builds the next level in the background while the current one is
+     * played, or null if levels are built when they are needed.
      */
-    private ArrayList<Point> spawnLocations;
+    private LevelPrefetcher prefetcher;
+
+    /**
+     * The display associated with a GameEngine object. This link allows the
+     * engine to pass level (level) and entity information to the GUI to be
+     * drawn. When the engine runs headless this is a NullRenderListener.
+     */
+    private final RenderListener renderer;
+
+    /**
+     * The tiles of the current level, stored in a compact LevelGrid of
+     * levelWidth by levelHeight tiles.
+     */
+    private LevelGrid level;
+
+    /**
+     * A SpawnPool used to create and track possible locations to place the
+     * player and ghosts when a new level is created.
+     */
+    private SpawnPool spawnLocations;
 
     /**
      * A Player object that is the current player. This object stores the state
@@ -94,503 +193,521 @@ public class GameEngine {
     private Player player;
 
     /**
-     * An array of Ghost objects that represents the ghosts in the current level
-     * of the game. Elements in this array should be an object of the type Ghost
-     * (meaning that a ghost is active (not defeated) and needs to be drawn or
-     * moved) or should be null (which means nothing is drawn or processed for
-     * movement). null values in this array are skipped during drawing and
-     * movement processing. Ghosts (Ghost objects) that the player defeats can
-     * be replaced with the value null in this array which removes them from the
-     * game, using syntax such as ghosts[i] = null
+     * The ghosts in the current level of the game. Every ghost in the store is
+     * active (not defeated) and is drawn and moved. Ghosts that the player
+     * defeats are removed from the store, which frees their slot for a new
+     * ghost. The store also knows which ghosts stand on each tile.
      */
-    private Ghost[] ghosts;
+    private GhostStore ghosts;
 
     /**
-     * Constructor that creates a GameEngine object and connects it with a
-     * GameGUI object.
-     *
-     * @param gui The GameGUI object that this engine will pass information to
-     * in order to draw levels and entities to the screen.
+     * The window onto a ChunkedLevel of a game started with startWorld, or
+     * null for a game of separate levels. The level, the ghosts and every
+     * position are then those of the window, which follows the player.
      */
-    public GameEngine(GameGUI gui) {
-        this.gui = gui;
-    }
+    private LevelWindow window;
 
     /**
-     * Generates a new level. The method builds a 2D array of TileType values
-     * that will be used to draw the level to the screen and to add a variety of
-     * tiles into each level. Tiles can be floors, walls, banks (to deposit
-     * ghosts), doors or breaches (to add new ghosts).
-     *
-     * @return A 2D array of TileType values representing the tiles in the
-     * current level of the game. The size of this array should use the width
-     * and height of the game level using the LEVEL_WIDTH and LEVEL_HEIGHT
-     * attributes.
-     */
-    @SuppressWarnings("empty-statement")
-    private TileType[][] generateLevel() {
-        //YOUR CODE HERE
-        TileType[][] Tile;
-        Tile = new TileType[LEVEL_WIDTH][LEVEL_HEIGHT];
-        for (TileType[] Tilep : Tile) {
-            for (int j = 0; j < Tilep.length; j++) {
-                Tilep[j] = TileType.FLOOR1;
-            }
-            for (int i = 0; i < LEVEL_WIDTH; i++) {
-                Tile[i][0] = TileType.WALL;
-            }
-
-            for (int i = 0; i < LEVEL_WIDTH; i++) {
-                Tile[i][LEVEL_HEIGHT - 1] = TileType.WALL;
-            }
-
-            for (int i = 0; i < LEVEL_HEIGHT; i++) {
-                Tile[LEVEL_WIDTH - 1][i] = TileType.WALL;
-            }
-
-            for (int i = 0; i < LEVEL_HEIGHT; i++) {
-                Tile[0][i] = TileType.WALL;
-
-            }
-
-            //1st wall  
-            for (int i = 0; i < 0; i++) {
-                Tile[i][8] = TileType.WALL;
-            }
-
-            for (int i = 0; i < 6; i++) {
-                Tile[i][8] = TileType.WALL;
-            }
-
-            Tile[6][8] = TileType.DOOR;
-
-            for (int i = 7; i < 9; i++) {
-                Tile[i][8] = TileType.WALL;
-            }
-
-            for (int i = 8; i < 16; i++) {
-                Tile[9][i] = TileType.WALL;
-            }
-
-            Tile[9][15] = TileType.WALL;
+     * Path distance from the player to every tile of the level, recalculated
+     * once per turn before the ghosts move.
+     */
+    private DistanceField playerDistance;
 
-            for (int i = 0; i < 3; i++) {
-                Tile[i][15] = TileType.WALL;
-            }
+    /**
+     * Path distance from the nearest bank to every tile of the level,
+     * calculated once per level.
+     */
+    private DistanceField bankDistance;
 
-            Tile[3][15] = TileType.DOOR;
+    /**
+     * Constructor that creates a GameEngine object with a fixed random seed
+     * and level size and connects it with a RenderListener, usually a
+     * GameGUI object.
+     *
+     * @param renderer The RenderListener object that this engine will pass
+     * information to in order to draw levels and entities to the screen.
+     * @param seed The seed for the random number generator of this engine
+     * @param width The width of every level in tiles
+     * @param height The height of every level in tiles
+     * @throws IllegalArgumentException if the width or height is not between
+     * MIN_LEVEL_SIZE and MAX_LEVEL_SIZE
+     */
+    public GameEngine(RenderListener renderer, long seed, int width, int height) {
+        if (width < MIN_LEVEL_SIZE || height < MIN_LEVEL_SIZE
+                || width > MAX_LEVEL_SIZE || height > MAX_LEVEL_SIZE) {
+            throw new IllegalArgumentException("Bad level size " + width + "x" + height);
+        }
+        this.renderer = renderer;
+        this.seed = seed;
+        levelWidth = width;
+        levelHeight = height;
+        rng = new GameRandom(seed);
+    }
 
-            for (int i = 4; i < 10; i++) {
-                Tile[i][15] = TileType.WALL;
-            }
+    /**
+     * Constructor that creates a GameEngine object with a fixed random seed
+     * and connects it with a RenderListener, usually a GameGUI object.
+     *
+     * @param renderer The RenderListener object that this engine will pass
+     * information to in order to draw levels and entities to the screen.
+     * @param seed The seed for the random number generator of this engine
+     */
+    public GameEngine(RenderListener renderer, long seed) {
+        this(renderer, seed, LEVEL_WIDTH, LEVEL_HEIGHT);
+    }
 
-            Tile[4][12] = TileType.BANK;
+    /**
+     * Constructor that creates a GameEngine object with a new random seed and
+     * connects it with a RenderListener, usually a GameGUI object.
+     *
+     * @param renderer The RenderListener object that this engine will pass
+     * information to in order to draw levels and entities to the screen.
+     */
+    public GameEngine(RenderListener renderer) {
+        this(renderer, GameRandom.randomSeed());
+    }
 
-            //2nd wall
-            for (int i = 0; i < 9; i++) {
-                Tile[18][i] = TileType.WALL;
-            }
+    /**
+     * Constructor that creates a headless GameEngine object with a fixed
+     * random seed. The engine does not draw anything, which allows it to be
+     * used for simulations on machines without a display.
+     *
+     * @param seed The seed for the random number generator of this engine
+     */
+    public GameEngine(long seed) {
+        this(NullRenderListener.INSTANCE, seed);
+    }
 
-            Tile[17][8] = TileType.WALL;
-            Tile[16][8] = TileType.WALL;
-            Tile[15][8] = TileType.WALL;
-            Tile[14][8] = TileType.WALL;
-            Tile[13][8] = TileType.WALL;
-
-            //3rd wall
-            Tile[30][12] = TileType.WALL;
-            Tile[30][13] = TileType.WALL;
-            Tile[30][14] = TileType.WALL;
-            Tile[30][15] = TileType.WALL;
-            Tile[30][16] = TileType.WALL;
-
-            Tile[19][13] = TileType.WALL;
-
-            Tile[19][14] = TileType.DOOR;
-
-            Tile[19][15] = TileType.WALL;
-            Tile[19][16] = TileType.WALL;
-            Tile[19][12] = TileType.WALL;
-            Tile[19][12] = TileType.WALL;
-            Tile[20][12] = TileType.WALL;
-            Tile[21][12] = TileType.WALL;
-            Tile[22][12] = TileType.WALL;
-            Tile[23][12] = TileType.WALL;
-            Tile[24][12] = TileType.WALL;
-
-            Tile[25][12] = TileType.DOOR;
-            Tile[26][12] = TileType.WALL;
-            Tile[27][12] = TileType.WALL;
-            Tile[28][12] = TileType.WALL;
-            Tile[29][12] = TileType.WALL;
+    /**
+     * Constructor that creates a headless GameEngine object with a fixed
+     * random seed and level size.
+     *
+     * @param seed The seed for the random number generator of this engine
+     * @param width The width of every level in tiles
+     * @param height The height of every level in tiles
+     * @throws IllegalArgumentException if the width or height is not between
+     * MIN_LEVEL_SIZE and MAX_LEVEL_SIZE
+     */
+    public GameEngine(long seed, int width, int height) {
+        this(NullRenderListener.INSTANCE, seed, width, height);
+    }
 
-        }
+    /**
+     * Constructor that creates a headless GameEngine object with a new random
+     * seed.
+     */
+    public GameEngine() {
+        this(NullRenderListener.INSTANCE);
+    }
 
-        return Tile;        //change this to return the 2D arrayof TileType values that you create above
+    /**
+     * Generates a new level. The method builds a LevelGrid of TileType values
+     * that will be used to draw the level to the screen and to add a variety of
+     * tiles into each level. Tiles can be floors, walls, banks (to deposit
+     * ghosts), doors or breaches (to add new ghosts). The layout comes from
+     * the LevelGenerator and is decided by the engine's seed and the level
+     * number alone, so every game with the same seed sees the same levels.
+     * The engine builds its levels as PreparedLevel objects, which call the
+     * same generator; this method only creates the tiles.
+     *
+     * @return A LevelGrid representing the tiles in the current level of the
+     * game. The size of the grid is the level size of this engine.
+     */
+    LevelGrid generateLevel() {
+        return LevelGenerator.generate(PreparedLevel.levelRandom(seed, levelNumber),
+                levelWidth, levelHeight, PreparedLevel.ghostsForLevel(levelNumber));
     }
 
     /**
      * Generates spawn points for the player and ghosts. The method processes
-     * the level 2D array and finds positions that are suitable for spawning,
-     * i.e. empty tiles such as floors. Suitable positions should then be added
-     * to the ArrayList as Point objects - Points are a simple kind of object
-     * that contain an X and a Y co-ordinate stored using the int primitive
-     * type.
-     *
-     * @return An ArrayList containing Point objects representing suitable X and
-     * Y co-ordinates in the current level where the player or ghosts can be
-     * added into the level.
-     */
-    private ArrayList<Point> getSpawns() {
-        ArrayList<Point> s = new ArrayList<Point>();
-        // YOUR CODE HERE
-        for (int x = 0; x < 34; x++) {
-            for (int y = 0; y < 18; y++) {
-                if (level[x][y] != TileType.BANK
-                        && level[x][y] != TileType.WALL
-                        && level[x][y] != TileType.BREACH) {
-                    Point p = new Point(x, y);
-                    s.add(p);
-                }
-            }
-        }
-        return s;
+     * the level grid and finds positions that are suitable for spawning,
+     * i.e. empty tiles such as floors. Suitable positions are stored in a
+     * SpawnPool as tile indexes rather than as separate objects.
+     *
+     * @return A SpawnPool containing every tile in the current level where the
+     * player or ghosts can be added into the level.
+     */
+    SpawnPool getSpawns() {
+        return new SpawnPool(level);
     }
 
     /**
-     * Adds ghosts in suitable locations in the current level. The first version
-     * of this method should picked fixed positions for ghosts by calling the
-     * constructor for the Ghost class and using fixed values for the X and Y
-     * position of the Ghost to be added. Ghost objects created this way should
-     * then be added into an array of Ghost objects that will be returned by
-     * this method. Ghost objects added to this array will then be drawn to the
-     * screen using the existing code in the GameGUI class.
-     *
-     * The second version of this method described in a later task should use
-     * the spawnLocations ArrayList to pick suitable positions to add ghosts,
-     * removing these positions from the spawns ArrayList as they are used
-     * (using the remove() method) to avoid multiple ghosts spawning in the same
-     * location and to prevent them from being added on top of banks, breaches
-     * etc. The method then creates ghosts by instantiating the Ghost class,
-     * setting health and the X and Y position for the ghost using the Point
-     * object removed from the spawns ArrayList.
+     * Creates or finds the PreparedLevel for the current level number. A
+     * level built in the background by the prefetcher is used if there is
+     * one, otherwise the level is built now. Either way the result is the
+     * same.
      *
-     * @return An array of Ghost objects representing the ghosts for the current
-     * level of the game
+     * @return the prepared level for levelNumber
      */
-    @SuppressWarnings("empty-statement")
-    private Ghost[] addGhosts() {
-        //YOUR CODE HERE
-        Ghost ghosts[] = new Ghost[4];
-        ghosts[0] = new Ghost(100, 10, 10);
-        //ghosts[0] = null;
-        level[10][10] = TileType.BREACH;
-        ghosts[1] = new Ghost(100, 23, 4);
-        //ghosts[1] = null;
-        level[23][4] = TileType.BREACH;
-        ghosts[2] = new Ghost(100, 25, 14);
-        //ghosts[2] = null;
-        level[11][15] = TileType.BREACH;
-        ghosts[3] = new Ghost(100, 26, 6);
-        //ghosts[3] = null;
-        level[5][3] = TileType.BREACH;
-        return ghosts;        //change this to return an array of ghost objects
+    private PreparedLevel prepareLevel() {
+        PreparedLevel next = prefetcher != null ? prefetcher.take(levelNumber) : null;
+        if (next == null) {
+            next = new PreparedLevel(seed, levelNumber, levelWidth, levelHeight);
+        }
+        return next;
     }
 
     /**
-     * Creates a Player object in the game. The method instantiates the Player
-     * class and assigns values for the energy and position.
+     * Switches the engine over to a prepared level: its tiles, ghosts, spawn
+     * locations and bank distance field replace those of the previous level,
+     * and the prefetcher (if there is one) starts on the level after it.
      *
-     * The first version of this method should use fixed a fixed position for
-     * the player to start, by setting fixed X and Y values when calling the
-     * constructor in the Player class.
-     *
-     * The second version of this method should use the spawns ArrayList to
-     * select a suitable location to spawn the player and removes the Point from
-     * the spawns ArrayList. This will prevent the Player from being added to
-     * the game inside a wall, bank or breach for example.
-     *
-     * @return A Player object representing the player in the game
+     * @param next The level to play
      */
-    private Player createPlayer() {
-
-        //YOUR CODE HERE
-        int y, z;
-
-        y = 23;
-        z = 16;
-        player = new Player(100, y, z);
-
-        return player;        //change this to return a Player object
+    private void enterLevel(PreparedLevel next) {
+        level = next.level;
+        bankDistance = next.bankDistance;
+        fitPlayerDistance();
+        spawnLocations = next.spawnLocations;
+        ghosts = next.ghosts;
+        clock = 0;
+        activeX = NO_POSITION;
+        if (prefetcher != null) {
+            prefetcher.request(seed, levelNumber + 1, levelWidth, levelHeight);
+        }
+    }
 
+    /**
+     * Makes sure playerDistance has the size of the current level. The field
+     * is searched afresh every turn, so it is only replaced when the level
+     * size changes: at 4096 by 4096 tiles it takes nearly 200 MB.
+     */
+    private void fitPlayerDistance() {
+        if (playerDistance == null || !playerDistance.hasSize(level.getWidth(), level.getHeight())) {
+            playerDistance = new DistanceField(level.getWidth(), level.getHeight());
+        }
     }
 
     /**
      * Handles the movement of the player when attempting to move left in the
      * game. This method is already called by the GameInputHandler class when
-     * the user has pressed the left arrow key on the keyboard. The method
-     * should check whether the tile to the left of the player is clear for
-     * movement and, if it is, update the player object's X and Y attribute
-     * values with the new position. If the tile to the left of the player is
-     * not empty the method will not update the player position, but may make
-     * other changes to the game, such as damaging a ghost in the tile to the
-     * left, depositing a ghost, refilling energy etc.
+     * the user has pressed the left arrow key on the keyboard. It calls move
+     * with Direction.LEFT, which does all of the work.
      */
     public void movePlayerLeft() {
-        // player.setPosition(player.getX() - 1, player.getY());
-        if ((level[player.getX() - 1][player.getY()] != TileType.WALL)
-                && (level[player.getX() - 1][player.getY()] != TileType.BREACH)) {
-            player.setPosition(player.getX() - 1, player.getY());
-
-            if (level[player.getX()][player.getY()] == TileType.BANK) {
-                player.changeEnergy(player.getMaxEnergy());
-                player.setPosition(player.getX() - 1, player.getY());
-                player.depositGhost();
-            }
-            //seal the breach by carring capture ghost to breach
-            if (level[player.getX() - 1][player.getY()] == TileType.BREACH
-                    && player.getCarryingGhost()) {
-                player.depositGhost();
-                level[player.getX() - 1][player.getY()] = TileType.FLOOR2;
-            }
-
-            for (int i = 0; i < ghosts.length; i++) {
-
-                if (ghosts[i] != null && player.getX() == ghosts[i].getX()
-                        && player.getY() == ghosts[i].getY()) {
-                    hitGhost(ghosts[i]);
-                }
-            }
-        }
+        move(Direction.LEFT);
     }
 
     /**
      * Handles the movement of the player when attempting to move right in the
      * game. This method is already called by the GameInputHandler class when
-     * the user has pressed the right arrow key on the keyboard. The method
-     * should check whether the tile to the right of the player is clear for
-     * movement and, if it is, update the player object's X and Y attribute
-     * values with the new position. If the tile to the right of the player is
-     * not empty the method will not update the player position, but may make
-     * other changes to the game, such as damaging a ghost in the tile to the
-     * right, depositing a ghost, refilling energy etc.
+     * the user has pressed the right arrow key on the keyboard. It calls move
+     * with Direction.RIGHT, which does all of the work.
      */
     public void movePlayerRight() {
-        //player.setPosition(player.getX() + 1, player.getY());
-        if ((level[player.getX() + 1][player.getY()] != TileType.WALL
-                && level[player.getX() + 1][player.getY()] != TileType.BREACH)) {
-            player.setPosition(player.getX() + 1, player.getY());
-
-            if (level[player.getX()][player.getY()] == TileType.BANK) {
-                player.changeEnergy(player.getMaxEnergy());
-                player.setPosition(player.getX() + 1, player.getY());
-                player.depositGhost();
-            }
-
-            //seal the breach by carring capture ghost to breach
-            if (level[player.getX() + 1][player.getY()] == TileType.BREACH
-                    && player.getCarryingGhost()) {
-                player.depositGhost();
-                level[player.getX() + 1][player.getY()] = TileType.FLOOR2;
-            }
-
-            for (int i = 0; i < ghosts.length; i++) {
-
-                if (ghosts[i] != null && player.getX() == ghosts[i].getX()
-                        && player.getY() == ghosts[i].
-                        getY()) {
-                    hitGhost(ghosts[i]);
-                }
-            }
-        }
+        move(Direction.RIGHT);
     }
 
     /**
      * Handles the movement of the player when attempting to move up in the
      * game. This method is already called by the GameInputHandler class when
-     * the user has pressed the up arrow key on the keyboard. The method should
-     * check whether the tile above the player is clear for movement and, if it
-     * is, update the player object's X and Y attribute values with the new
-     * position. If the tile above the player is not empty the method will not
-     * update the player position, but may make other changes to the game, such
-     * as damaging a ghost in the tile above, depositing a ghost, refilling
-     * energy etc.
+     * the user has pressed the up arrow key on the keyboard. It calls move
+     * with Direction.UP, which does all of the work.
      */
     public void movePlayerUp() {
-
-        if ((level[player.getX()][player.getY() - 1] != TileType.WALL
-                && level[player.getX()][player.getY() - 1] != TileType.BREACH)) {
-            player.setPosition(player.getX(), player.getY() - 1);
-
-            if (level[player.getX()][player.getY()] == TileType.BANK) {
-                player.changeEnergy(player.getMaxEnergy());
-                player.setPosition(player.getX(), player.getY() - 1);
-                player.depositGhost();
-            }
-
-            if (level[player.getX()][player.getY() - 1] == TileType.BREACH
-                    && player.getCarryingGhost()) {
-                player.depositGhost();
-                level[player.getX()][player.getY() - 1] = TileType.FLOOR2;
-            }
-
-            for (int i = 0; i < ghosts.length; i++) {
-                if (ghosts[i] != null && player.getX() == ghosts[i].getX()
-                        && player.getY() == ghosts[i].
-                        getY()) {
-                    hitGhost(ghosts[i]);
-                }
-            }
-        }
+        move(Direction.UP);
     }
 
     /**
      * Handles the movement of the player when attempting to move down in the
      * game. This method is already called by the GameInputHandler class when
-     * the user has pressed the down arrow key on the keyboard. The method
-     * should check whether the tile below the player is clear for movement and,
-     * if it is, update the player object's X and Y attribute values with the
-     * new position. If the tile below the player is not empty the method will
-     * not update the player position, but may make other changes to the game,
-     * such as damaging a ghost in the tile below, depositing a ghost, refilling
-     * energy etc.
+     * the user has pressed the down arrow key on the keyboard. It calls move
+     * with Direction.DOWN, which does all of the work.
      */
     public void movePlayerDown() {
-        if ((level[player.getX()][player.getY() + 1] != TileType.WALL
-                && level[player.getX()][player.getY() + 1] != TileType.BREACH)) {
-            player.setPosition(player.getX(), player.getY() + 1);
-
-            if (level[player.getX()][player.getY()] == TileType.BANK) {
-                player.changeEnergy(player.getMaxEnergy());
-                player.setPosition(player.getX(), player.getY() + 1);
-                player.depositGhost();
-            }
+        move(Direction.DOWN);
+    }
 
-            if (level[player.getX()][player.getY() + 1] == TileType.BREACH
-                    && player.getCarryingGhost()) {
-                player.depositGhost();
-                level[player.getX()][player.getY() + 1] = TileType.FLOOR2;
+    /**
+     * Moves the player one step in a direction, which can be diagonal, or not
+     * at all for WAIT. The tile in that direction is looked up once and what
+     * happens depends on its type:
+     *
+     * a wall stops the player;
+     * a breach stops the player, but if the player is carrying a captured
+     * ghost the ghost is used to seal the breach, which becomes floor;
+     * a bank refills the player's energy, takes the captured ghost (if any)
+     * and the player passes over it to the tile beyond, if that tile is open;
+     * any other tile is entered, and every ghost on it is hit.
+     *
+     * The method allocates nothing and does not look at any ghost except
+     * those on the tile the player enters.
+     *
+     * @param d The Direction to move in
+     */
+    public void move(Direction d) {
+        long start = GameMetrics.start();
+        if (d != Direction.WAIT) {
+            int x = player.getX() + d.dx();
+            int y = player.getY() + d.dy();
+            switch (level.get(x, y)) {
+                case WALL:
+                    break;
+                case BREACH:
+                    //seal the breach by carrying a captured ghost into it
+                    if (player.getCarryingGhost()) {
+                        player.depositGhost();
+                        level.set(x, y, TileType.FLOOR2);
+                        GameMetrics.count(GameMetrics.BREACHES_SEALED);
+                    }
+                    break;
+                case BANK:
+                    player.changeEnergy(player.getMaxEnergy());
+                    player.depositGhost();
+                    if (level.isPlayerOpen(x + d.dx(), y + d.dy())) {
+                        enterTile(x + d.dx(), y + d.dy());
+                    }
+                    break;
+                default:
+                    enterTile(x, y);
+                    break;
             }
+        }
+        GameMetrics.stop(GameMetrics.move(d), start);
+    }
 
-            for (int i = 0; i < ghosts.length; i++) {
-                if (ghosts[i] != null && player.getX() == ghosts[i].getX()
-                        && player.getY() == ghosts[i].
-                        getY()) {
-                    hitGhost(ghosts[i]);
+    /**
+     * Moves the player into a tile and hits every ghost standing on it.
+     *
+     * @param x The X co-ordinate of the tile
+     * @param y The Y co-ordinate of the tile
+     */
+    private void enterTile(int x, int y) {
+        player.setPosition(x, y);
+        hitGhostsAt(x, y);
+    }
 
-                }
-            }
+    /**
+     * Hits every ghost standing on the tile at X,Y. The ghosts are found with
+     * the occupancy index of the ghost store rather than by searching every
+     * ghost.
+     *
+     * @param x The X co-ordinate of the tile the player moved into
+     * @param y The Y co-ordinate of the tile the player moved into
+     */
+    private void hitGhostsAt(int x, int y) {
+        int slot = ghosts.first(x, y);
+        while (slot != GhostStore.NONE) {
+            int next = ghosts.next(slot);  //hitGhost may remove this slot
+            hitGhost(slot);
+            slot = next;
         }
     }
 
     /**
      * Reduces a ghost's health in response to the player attempting to move
-     * into the same square as the ghost (attacking the ghost).
+     * into the same square as the ghost (attacking the ghost). A ghost with 0
+     * or less health is captured and removed from the game straight away.
      *
-     * @param g The Ghost object corresponding to the ghost in the game that the
-     * player just attempted to move into the same tile as.
+     * @param slot The slot in the ghost store of the ghost that the player
+     * just attempted to move into the same tile as.
      */
-    private void hitGhost(Ghost g) {
+    private void hitGhost(int slot) {
         if (player.getEnergy() > 0) {
             player.changeEnergy(-10);
-            g.changeHealth(-20);
-            System.out.println("hit");
+            ghosts.changeHealth(slot, -20);
+            GameMetrics.count(GameMetrics.GHOSTS_HIT);
         }
-        if (g.getHealth() <= 0) {
+        if (ghosts.getHealth(slot) <= 0) {
             player.captureGhost();
+            ghostsCaptured++;
+            GameMetrics.count(GameMetrics.GHOSTS_CAPTURED);
+            GhostCapturedEvent event = new GhostCapturedEvent();
+            if (event.shouldCommit()) {
+                event.turnNumber = turnNumber;
+                event.levelNumber = levelNumber;
+                event.x = ghosts.getX(slot);
+                event.y = ghosts.getY(slot);
+                event.commit();
+            }
+            ghosts.remove(slot);
         }
         cleanDefeatedGhosts();
     }
 
     /**
-     * Moves all ghosts on the current level. The method iterates over all
-     * elements of the ghosts array (using a for loop) and checks if each one is
-     * null (using an if statement inside that for loop). For every element of
-     * the array that is NOT null, this method calls the moveGhost method and
-     * passes it the current array element.
+     * Moves the game clock on by one turn and moves every ghost whose action
+     * time comes up in that turn. The distance from the player to the tiles
+     * around the player is worked out once (only as far as a ghost needs to
+     * know about, since ghosts further away ignore the player), then the
+     * method takes the due ghosts from the ghost store's scheduler in time
+     * order and calls moveGhost for each; a fast ghost can come up more than
+     * once in a turn and a slow ghost not at all. Ghosts that are not due are
+     * not looked at, so the work done depends on how many ghosts act rather
+     * than how many there are.
+     *
+     * Ghosts outside the activity region around the player (see
+     * setActivityDistance) are dormant: they do not move and are not in the
+     * scheduler, so they cost nothing however many there are. A ghost goes
+     * dormant when its action comes up outside the region, instead of
+     * acting, and wakes and acts in the same turn once the region moves over
+     * it. Dormant ghosts never move, so no dormant ghost is ever inside the
+     * region at the end of a turn.
+     *
+     * @return the number of ghost moves made
      */
-    private void moveGhosts() {
-        for (Ghost ghost : ghosts) {
-            moveGhost(ghost);
+    int moveGhosts() {
+        long start = GameMetrics.start();
+        clock += TICKS_PER_TURN;
+        wakeGhosts();
+        int moved = 0;
+        if (ghosts.nextActionTime() <= clock) {
+            playerDistance.compute(level, player.getX(), player.getY(), GHOST_FLEE_DISTANCE + 1);
+            for (int slot = ghosts.pollDue(clock); slot != GhostStore.NONE; slot = ghosts.pollDue(clock)) {
+                if (isActive(ghosts.getX(slot), ghosts.getY(slot))) {
+                    moveGhost(slot);
+                    moved++;
+                } else {
+                    ghosts.sleep(slot);
+                }
+            }
         }
+        GameMetrics.stop(GameMetrics.MOVE_GHOSTS, start);
+        return moved;
     }
 
     /**
-     * Moves a specific ghost in the game. The method updates the X and Y
-     * attributes of the Ghost object passed to the method to set its new
-     * position.
+     * Checks whether a tile is inside the activity region around the player.
      *
-     * @param g The Ghost that needs to be moved
+     * @param x The X co-ordinate of the tile
+     * @param y The Y co-ordinate of the tile
+     * @return true if ghosts on the tile are awake
      */
-    private void moveGhost(Ghost g) {
-        //decide if the ghost is near the player in less than 3 steps in x and y 
-        boolean is_player_near = false;
-        if (g != null && Math.abs(player.getX() - g.getX()) < 3
-                && Math.abs(player.getY() - g.getY()) < 3) {
-            is_player_near = true;
+    private boolean isActive(int x, int y) {
+        return Math.abs(x - player.getX()) <= activityDistance
+                && Math.abs(y - player.getY()) <= activityDistance;
+    }
+
+    /**
+     * Wakes the dormant ghosts inside the activity region, so they act this
+     * turn. The player moves at most one tile a turn, which moves the
+     * square region by one row or column, and no dormant ghost was left
+     * inside the region last turn, so only the tiles in the new row or
+     * column need to be looked at: the cost depends on the activity
+     * distance, not on the number of ghosts far away. After a new level, a
+     * restore or a change of distance the whole region is looked at once.
+     */
+    private void wakeGhosts() {
+        int px = player.getX();
+        int py = player.getY();
+        //no wider than the level, so the region's edges cannot overflow
+        int d = Math.min(activityDistance, level.getWidth() + level.getHeight());
+        if (px == activeX && py == activeY) {
+            return;
+        }
+        if (activeX != NO_POSITION && Math.abs(px - activeX) + Math.abs(py - activeY) == 1) {
+            if (px != activeX) {
+                int x = px + (px > activeX ? d : -d);
+                wakeGhosts(x, py - d, x, py + d);
+            } else {
+                int y = py + (py > activeY ? d : -d);
+                wakeGhosts(px - d, y, px + d, y);
+            }
+        } else {
+            wakeGhosts(px - d, py - d, px + d, py + d);
         }
+        activeX = px;
+        activeY = py;
+    }
 
-        if (Math.random() < 0.4) {
-            if ((g != null) && (g.getY() + 1 < 16)
-                    && (level[g.getX()][g.getY() + 1] != TileType.WALL)) {
-                if ((!is_player_near) || (is_player_near && level[g.getX()][g.getY() + 1] != TileType.DOOR)) {
-                    g.yPos++;
-                } else if ((g.getY() > 0) && (level[g.getX()][g.getY() - 1] != TileType.WALL)) {
-                    if ((!is_player_near) || (is_player_near && level[g.getX()][g.getY() - 1] != TileType.DOOR)) {
-                        g.yPos--;
+    /**
+     * Wakes the dormant ghosts in a rectangle of tiles, which may reach
+     * outside the level.
+     *
+     * @param x0 The X co-ordinate of the left column
+     * @param y0 The Y co-ordinate of the top row
+     * @param x1 The X co-ordinate of the right column
+     * @param y1 The Y co-ordinate of the bottom row
+     */
+    private void wakeGhosts(int x0, int y0, int x1, int y1) {
+        for (int y = Math.max(y0, 0); y <= Math.min(y1, level.getHeight() - 1); y++) {
+            for (int x = Math.max(x0, 0); x <= Math.min(x1, level.getWidth() - 1); x++) {
+                for (int slot = ghosts.first(x, y); slot != GhostStore.NONE; slot = ghosts.next(slot)) {
+                    if (ghosts.isDormant(slot)) {
+                        ghosts.wake(slot, clock);
                     }
                 }
             }
         }
-        if (Math.random() < 0.4) {
-            if ((g != null) && (g.getX() + 1 < 32) && (level[g.getX() + 1][g.getY()] != TileType.WALL)) {
-                if ((!is_player_near) || (is_player_near && level[g.getX() + 1][g.getY()] != TileType.DOOR)) {
-                    g.xPos++;
+    }
+
+    /**
+     * Moves a specific ghost in the game. A ghost that is within
+     * GHOST_FLEE_DISTANCE steps of the player runs away: it moves to the
+     * neighbouring tile that is furthest from the player by path distance, so
+     * it goes around walls rather than into them, and it will not use doors.
+     * Other ghosts wander in a random direction. Ghosts never step onto a
+     * bank. The method updates the position of the ghost in the ghost store.
+     *
+     * @param slot The slot of the ghost that needs to be moved
+     */
+    private void moveGhost(int slot) {
+        int x = ghosts.getX(slot);
+        int y = ghosts.getY(slot);
+        int here = playerDistance.get(x, y);
+        boolean is_player_near = here <= GHOST_FLEE_DISTANCE;
+
+        if (is_player_near) {
+            int best = here;
+            int bestX = x;
+            int bestY = y;
+            for (int d = 0; d < 4; d++) {
+                int nx = x + GHOST_DX[d];
+                int ny = y + GHOST_DY[d];
+                if (canGhostEnter(nx, ny, true) && playerDistance.get(nx, ny) > best) {
+                    best = playerDistance.get(nx, ny);
+                    bestX = nx;
+                    bestY = ny;
                 }
             }
-        } else if (g != null && (g.getX() > 0) && (level[g.getX() - 1][g.getY()] != TileType.WALL)) {
-            if ((!is_player_near) || (is_player_near && level[g.getX() - 1][g.getY()] != TileType.DOOR)) {
-                g.xPos--;
+            if (bestX != x || bestY != y) {
+                ghosts.setPosition(slot, bestX, bestY);
+            }
+        } else if (rng.nextDouble() < GHOST_WANDER_CHANCE) {
+            int d = rng.nextInt(4);
+            int nx = x + GHOST_DX[d];
+            int ny = y + GHOST_DY[d];
+            if (canGhostEnter(nx, ny, false)) {
+                ghosts.setPosition(slot, nx, ny);
             }
         }
-
     }
 
     /**
-     * Processes the ghosts array to find any Ghost in the array with 0 or less
-     * health. Any Ghost in the array with 0 or less health should be set to
-     * null; when drawing or moving ghosts the null elements in the ghosts array
-     * are skipped.
+     * Checks whether a ghost may move into a tile: the tile must be in the
+     * level, not a wall and not a bank.
+     *
+     * @param x The X co-ordinate of the tile
+     * @param y The Y co-ordinate of the tile
+     * @param avoidDoors true if doors should also be refused
+     * @return true if a ghost can move into the tile
      */
-    private void cleanDefeatedGhosts() {
-
-        for (int i = 0; i < ghosts.length; i++) {
-            if (ghosts[i] != null && ghosts[i].getHealth() <= 0) {
-                ghosts[i] = null;
-            }
-        }
-
-        boolean empty = true;
-        for (Ghost ghost : ghosts) {
-            if (ghost != null) {
-                empty = false;
-            }
-        }
+    private boolean canGhostEnter(int x, int y, boolean avoidDoors) {
+        return level.inBounds(x, y)
+                && level.isGhostOpen(x, y)
+                && bankDistance.get(x, y) > 0
+                && !(avoidDoors && level.isDoor(x, y));
+    }
 
-        int add_ghost = 0;
-        if (empty && player.getCarryingGhost()) {
-            for (int i = 0; i < 34; i++) {
-                for (int j = 0; j < 18; j++) {
-                    if (level[i][j] == TileType.BREACH) {
-                        add_ghost++;
-                        ghosts[add_ghost] = new Ghost(100, i, j);
-                        level[i][j] = TileType.FLOOR1;
+    /**
+     * Refills the level from its breaches once every ghost has been defeated
+     * while the player still carries a captured ghost. Defeated ghosts are
+     * already removed by hitGhost, so the ghost store's live count tells
+     * whether the level is empty. Every breach releases one ghost of normal
+     * speed into a free slot of the store, which grows if it has to. The new
+     * ghosts first act one turn from now.
+     */
+    void cleanDefeatedGhosts() {
+        if (ghosts.liveCount() == 0 && player.getCarryingGhost()) {
+            for (int i = 0; i < level.getWidth(); i++) {
+                for (int j = 0; j < level.getHeight(); j++) {
+                    if (level.get(i, j) == TileType.BREACH) {
+                        ghosts.add(100, i, j, GHOST_DELAY_NORMAL, clock + GHOST_DELAY_NORMAL);
+                        level.set(i, j, TileType.FLOOR1);
                     }
                 }
             }
-
         }
-
     }
 
     /**
@@ -600,39 +717,29 @@ public class GameEngine {
      * the level. This method is similar to the startGame method and uses SOME
      * identical code.
      *
-     * This method should increase the current level number, create a new level
-     * by calling the generateLevel method and setting the level attribute using
-     * the returned 2D array, add new Ghosts, and finally place the player in
-     * the level.
-     *
-     * A second version of this method in a later task should also find suitable
-     * positions to add ghosts and the player using the spawnLocations ArrayList
-     * and code in the getSpawns method.
+     * This method increases the current level number, switches to the new
+     * level (already built in the background if level prefetching is on)
+     * and places the player in it.
      */
     private void nextLevel() {
+        long start = GameMetrics.start();
+        GameMetrics.count(GameMetrics.LEVELS_COMPLETED);
         levelNumber++;
-        System.out.println(levelNumber);
-        level = generateLevel();
-        placePlayer();
-        ghosts = addGhosts();
-        spawnLocations = getSpawns();
-
+        PreparedLevel next = prepareLevel();
+        enterLevel(next);
+        placePlayer(next.playerX, next.playerY);
+        GameMetrics.stop(GameMetrics.NEXT_LEVEL, start);
     }
 
     /**
-     * The first version of this method should place the player in the game
-     * level by setting new, fixed X and Y values for the player object in this
-     * class.
+     * Places the player in a new level at the spawn position chosen for it.
      *
-     * The second version of this method in a later task should place the player
-     * in a game level by choosing a position from the spawnLocations ArrayList,
-     * removing the spawn position as it is used. The method sets the players
-     * position in the level by calling its setPosition method with the X and Y
-     * values of the Point taken from the spawnLocations ArrayList.
+     * @param x The X co-ordinate the player starts the level at
+     * @param y The Y co-ordinate the player starts the level at
      */
-    private void placePlayer() {
+    private void placePlayer(int x, int y) {
         player.changeEnergy(player.getEnergy());
-        player.setPosition(10, 10);
+        player.setPosition(x, y);
     }
 
     /**
@@ -647,19 +754,42 @@ public class GameEngine {
      * harder level.
      */
     public void doTurn() {
+        long start = GameMetrics.start();
+        TurnProcessedEvent event = new TurnProcessedEvent();
+        event.begin();
+        turnNumber++;
         cleanDefeatedGhosts();
-        moveGhosts();
-        gui.updateDisplay(level, player, ghosts);
-
-        Boolean next = true;
-        for (Ghost g : ghosts) {
-            if (g != null) {
-                next = false;
-            }
+        int moved = moveGhosts();
+        if (window != null) {
+            followPlayer();
         }
-        if (next) {
+        renderer.updateDisplay(level, player, ghosts);
+
+        //a world is one level that never ends
+        if (ghosts.liveCount() == 0 && window == null) {
             nextLevel();
         }
+        event.end();
+        if (event.shouldCommit()) {
+            event.turnNumber = turnNumber;
+            event.levelNumber = levelNumber;
+            event.ghostCount = ghosts.liveCount();
+            event.ghostsMoved = moved;
+            event.commit();
+        }
+        GameMetrics.stop(GameMetrics.TURN, start);
+    }
+
+    /**
+     * Plays one complete turn for a command: moves the player in the given
+     * direction (nothing happens to the player for WAIT) and then calls
+     * doTurn.
+     *
+     * @param c The Command given by the player for this turn
+     */
+    public void playTurn(Command c) {
+        move(c.direction());
+        doTurn();
     }
 
     /**
@@ -668,10 +798,513 @@ public class GameEngine {
      * the level on screen using the information on level, player and ghosts.
      */
     public void startGame() {
-        level = generateLevel();
-        spawnLocations = getSpawns();
-        ghosts = addGhosts();
-        player = createPlayer();
-        gui.updateDisplay(level, player, ghosts);
+        PreparedLevel first = prepareLevel();
+        enterLevel(first);
+        player = new Player(100, first.playerX, first.playerY);
+        renderer.updateDisplay(level, player, ghosts);
+    }
+
+    /**
+     * Starts a game on a world of the given size instead of on separate
+     * levels. A world can be far larger than MAX_LEVEL_SIZE, such as 100000
+     * by 100000 tiles: it is a ChunkedLevel generated from the seed a chunk
+     * at a time, and the engine plays on a LevelWindow of LevelWindow.SIZE
+     * tiles around the player, which moves with the player. The level,
+     * ghosts and positions the engine hands out, and getLevelWidth and
+     * getLevelHeight, are all those of the window; the window's place in the
+     * world is given by getWindowX and getWindowY. The player starts near
+     * the middle of the world.
+     *
+     * A world is a single level that never ends, and it cannot be saved:
+     * snapshot refuses it, so a world game can neither be searched by an
+     * MctsPolicy nor recorded.
+     *
+     * @param width The width of the world in tiles
+     * @param height The height of the world in tiles
+     * @throws IllegalArgumentException if the width or height is less than
+     * MIN_LEVEL_SIZE
+     */
+    public void startWorld(int width, int height) {
+        if (width < MIN_LEVEL_SIZE || height < MIN_LEVEL_SIZE) {
+            throw new IllegalArgumentException("Bad world size " + width + "x" + height);
+        }
+        window = new LevelWindow(seed, width, height);
+        ChunkedLevel world = window.getWorld();
+        int x = width / 2;
+        int y = height / 2 | 1;   //odd rows never hold a full-width wall
+        while (x < width - 1 && !world.isPlayerOpen(x, y)) {
+            x++;
+        }
+        levelWidth = LevelWindow.SIZE;
+        levelHeight = LevelWindow.SIZE;
+        clock = 0;
+        level = window.centre(null, x, y);
+        ghosts = window.carryGhosts(null, 0, 0, clock);
+        enterWindow();
+        player = new Player(100, x - window.getX(), y - window.getY());
+        renderer.updateDisplay(level, player, ghosts);
+    }
+
+    /**
+     * Moves the window of a world game once the player comes near one of its
+     * edges, so that the player is near the middle again. Tiles changed in
+     * the old window are kept by the world and ghosts left outside the new
+     * window are parked there (see LevelWindow), and the player keeps its
+     * place in the world.
+     */
+    private void followPlayer() {
+        int px = player.getX();
+        int py = player.getY();
+        if (!window.isNearEdge(px, py)) {
+            return;
+        }
+        int oldX = window.getX();
+        int oldY = window.getY();
+        level = window.centre(level, oldX + px, oldY + py);
+        ghosts = window.carryGhosts(ghosts, oldX, oldY, clock);
+        player.setPosition(oldX + px - window.getX(), oldY + py - window.getY());
+        enterWindow();
+    }
+
+    /**
+     * Works out everything the engine keeps about the level for a new
+     * window: the distance to the banks in it and its spawn locations.
+     */
+    private void enterWindow() {
+        if (bankDistance == null || !bankDistance.hasSize(levelWidth, levelHeight)) {
+            bankDistance = new DistanceField(levelWidth, levelHeight);
+        }
+        bankDistance.compute(level, TileType.BANK);
+        fitPlayerDistance();
+        spawnLocations = new SpawnPool(level);
+        activeX = NO_POSITION;
+    }
+
+    /**
+     * Turns building levels in the background on or off. With it on, the
+     * level after the current one is generated on another thread while the
+     * current level is played, so moving on to it does not pause the game.
+     * The levels are exactly the same either way. Call this before
+     * startGame; turning it off stops the background thread.
+     *
+     * @param enabled true to build levels in the background
+     */
+    public void setLevelPrefetch(boolean enabled) {
+        if (enabled && prefetcher == null) {
+            prefetcher = new LevelPrefetcher();
+        } else if (!enabled && prefetcher != null) {
+            prefetcher.shutdown();
+            prefetcher = null;
+        }
+    }
+
+    /**
+     * Returns the number of bytes snapshot will write for the current state
+     * of the game.
+     *
+     * @return the size of a snapshot in bytes
+     */
+    public int snapshotSize() {
+        return 4 + 1 + 8 + 8 + 4 * 3 + 8 + 4 + 4 * 4 + 1
+                + level.serializedSize() + ghosts.serializedSize() + spawnLocations.serializedSize();
+    }
+
+    /**
+     * Saves the whole state of the game to a new byte array. Restoring the
+     * array into any engine, with restore, puts that engine in exactly this
+     * state, so the same commands played on both engines afterwards give the
+     * same game.
+     *
+     * @return the snapshot
+     * @throws IllegalStateException if the game has not been started or is
+     * played on a world
+     */
+    public byte[] snapshot() {
+        checkSnapshot();
+        ByteBuffer out = ByteBuffer.allocate(snapshotSize());
+        snapshot(out);
+        return out.array();
+    }
+
+    /**
+     * Saves the whole state of the game to a buffer, starting at the
+     * buffer's position. Callers that take many snapshots can reuse one
+     * buffer of at least snapshotSize() bytes so that nothing is allocated.
+     *
+     * The layout is: the magic number and version; the seed, random number
+     * generator state, level number, turn number, ghosts captured, game
+     * clock and activity distance; the player's position, energy, maximum
+     * energy and whether it carries a ghost; then the level tiles, the ghost
+     * store and the spawn locations, as written by their own write methods. Everything else the engine
+     * keeps can be worked out from these.
+     *
+     * @param out The buffer to write to
+     * @throws IllegalStateException if the game has not been started or is
+     * played on a world
+     * @throws java.nio.BufferOverflowException if the buffer is too small
+     */
+    public void snapshot(ByteBuffer out) {
+        checkSnapshot();
+        out.putInt(SNAPSHOT_MAGIC);
+        out.put(SNAPSHOT_VERSION);
+        out.putLong(seed);
+        out.putLong(rng.getState());
+        out.putInt(levelNumber);
+        out.putInt(turnNumber);
+        out.putInt(ghostsCaptured);
+        out.putLong(clock);
+        out.putInt(activityDistance);
+        out.putInt(player.getX());
+        out.putInt(player.getY());
+        out.putInt(player.getEnergy());
+        out.putInt(player.getMaxEnergy());
+        out.put((byte) (player.hasGhost() ? 1 : 0));
+        level.write(out);
+        ghosts.write(out);
+        spawnLocations.write(out);
+    }
+
+    /**
+     * Checks that the game can be saved. A world game cannot, because most
+     * of its state is in the chunks and parked ghosts of the world rather
+     * than in the window the engine plays on.
+     *
+     * @throws IllegalStateException if the game has not been started or is
+     * played on a world
+     */
+    private void checkSnapshot() {
+        if (player == null) {
+            throw new IllegalStateException("The game has not been started");
+        }
+        if (window != null) {
+            throw new IllegalStateException("A game on a world cannot be saved");
+        }
+    }
+
+    /**
+     * Replaces the whole state of the game with a snapshot, then asks the
+     * display to show it.
+     *
+     * @param data A snapshot made by snapshot()
+     * @throws IllegalArgumentException if the data is not a snapshot or has
+     * an unsupported version
+     */
+    public void restore(byte[] data) {
+        restore(ByteBuffer.wrap(data));
+    }
+
+    /**
+     * Replaces the whole state of the game with a snapshot read from a
+     * buffer, starting at the buffer's position, then asks the display to
+     * show it. The engine does not have to be started first, and the
+     * snapshot can come from a game with a different seed or level size,
+     * which the engine then takes on; an engine playing a world leaves it.
+     * Nothing in the engine changes if the
+     * snapshot turns out to be invalid.
+     *
+     * The distance to the bank is only worked out again if the snapshot is
+     * from a different level than the engine is on, so restoring a snapshot
+     * of the same level over and over is cheap.
+     *
+     * @param in The buffer to read from
+     * @throws IllegalArgumentException if the data is not a snapshot or has
+     * an unsupported version
+     */
+    public void restore(ByteBuffer in) {
+        long newSeed;
+        long rngState;
+        int newLevelNumber;
+        int newTurnNumber;
+        int newGhostsCaptured;
+        long newClock;
+        int newActivityDistance;
+        Player newPlayer;
+        LevelGrid newLevel;
+        GhostStore newGhosts;
+        SpawnPool newSpawns;
+        try {
+            if (in.getInt() != SNAPSHOT_MAGIC) {
+                throw new IllegalArgumentException("Not a game snapshot");
+            }
+            int version = in.get();
+            if (version != SNAPSHOT_VERSION) {
+                throw new IllegalArgumentException("Unsupported snapshot version " + version);
+            }
+            newSeed = in.getLong();
+            rngState = in.getLong();
+            newLevelNumber = in.getInt();
+            newTurnNumber = in.getInt();
+            newGhostsCaptured = in.getInt();
+            newClock = in.getLong();
+            newActivityDistance = in.getInt();
+            if (newActivityDistance <= GHOST_FLEE_DISTANCE) {
+                throw new IllegalArgumentException("Bad activity distance " + newActivityDistance);
+            }
+            int px = in.getInt();
+            int py = in.getInt();
+            int energy = in.getInt();
+            newPlayer = new Player(in.getInt(), px, py);
+            newPlayer.changeEnergy(energy - newPlayer.getMaxEnergy());
+            if (in.get() != 0) {
+                newPlayer.captureGhost();
+            }
+            newLevel = LevelGrid.read(in);
+            if (!newLevel.inBounds(px, py)) {
+                throw new IllegalArgumentException("Player outside the level at " + px + "," + py);
+            }
+            newGhosts = GhostStore.read(in, newLevel.getWidth(), newLevel.getHeight());
+            newSpawns = SpawnPool.read(in, newLevel);
+        } catch (BufferUnderflowException e) {
+            throw new IllegalArgumentException("Snapshot is cut short", e);
+        }
+
+        boolean sameLevel = level != null && window == null && newSeed == seed && newLevelNumber == levelNumber
+                && newLevel.getWidth() == level.getWidth() && newLevel.getHeight() == level.getHeight();
+        seed = newSeed;
+        rng.setState(rngState);
+        levelNumber = newLevelNumber;
+        turnNumber = newTurnNumber;
+        ghostsCaptured = newGhostsCaptured;
+        clock = newClock;
+        activityDistance = newActivityDistance;
+        activeX = NO_POSITION;
+        window = null;
+        player = newPlayer;
+        level = newLevel;
+        levelWidth = level.getWidth();
+        levelHeight = level.getHeight();
+        ghosts = newGhosts;
+        spawnLocations = newSpawns;
+        if (!sameLevel) {
+            //walls and banks never change during a level, so neither does this
+            if (bankDistance == null || !bankDistance.hasSize(levelWidth, levelHeight)) {
+                bankDistance = new DistanceField(levelWidth, levelHeight);
+            }
+            bankDistance.compute(level, TileType.BANK);
+            fitPlayerDistance();
+            if (prefetcher != null) {
+                prefetcher.request(seed, levelNumber + 1, levelWidth, levelHeight);
+            }
+        }
+        renderer.updateDisplay(level, player, ghosts);
+    }
+
+    /**
+     * Returns the current level number of the game.
+     *
+     * @return the level number, starting from 1
+     */
+    public int getLevelNumber() {
+        return levelNumber;
+    }
+
+    /**
+     * Returns the width of the levels of this game.
+     *
+     * @return the width of every level in tiles
+     */
+    public int getLevelWidth() {
+        return levelWidth;
+    }
+
+    /**
+     * Returns the height of the levels of this game.
+     *
+     * @return the height of every level in tiles
+     */
+    public int getLevelHeight() {
+        return levelHeight;
+    }
+
+    /**
+     * Returns the X co-ordinate in the world of the left column of the
+     * level the engine plays on. Adding it to an X co-ordinate in the level
+     * gives the X co-ordinate in the world.
+     *
+     * @return the world X co-ordinate of the window of a world game, or 0
+     * for a game of separate levels
+     */
+    public int getWindowX() {
+        return window != null ? window.getX() : 0;
+    }
+
+    /**
+     * Returns the Y co-ordinate in the world of the top row of the level
+     * the engine plays on.
+     *
+     * @return the world Y co-ordinate of the window of a world game, or 0
+     * for a game of separate levels
+     */
+    public int getWindowY() {
+        return window != null ? window.getY() : 0;
+    }
+
+    /**
+     * Returns the current turn number of the game.
+     *
+     * @return the turn number, starting from 1 and increased by every call to
+     * doTurn
+     */
+    public int getTurnNumber() {
+        return turnNumber;
+    }
+
+    /**
+     * Returns the time of the game clock.
+     *
+     * @return the number of clock ticks since the current level started,
+     * TICKS_PER_TURN for every turn played on it
+     */
+    public long getClock() {
+        return clock;
+    }
+
+    /**
+     * Returns the activity distance of the game.
+     *
+     * @return the distance from the player beyond which ghosts are dormant
+     */
+    public int getActivityDistance() {
+        return activityDistance;
+    }
+
+    /**
+     * Sets how far from the player ghosts stay awake. Ghosts more than this
+     * many tiles away across or down are dormant and do not move, so a
+     * turn costs about the same however many ghosts are far away. Dormant
+     * ghosts inside a larger region wake next turn. Integer.MAX_VALUE keeps
+     * every ghost awake. The distance is part of the game state: it is saved
+     * in snapshots and the same seed and commands only give the same game
+     * with the same distance.
+     *
+     * @param distance The activity distance in tiles
+     * @throws IllegalArgumentException if the distance is not more than the
+     * distance at which ghosts flee from the player
+     */
+    public void setActivityDistance(int distance) {
+        if (distance <= GHOST_FLEE_DISTANCE) {
+            throw new IllegalArgumentException("Bad activity distance " + distance);
+        }
+        activityDistance = distance;
+        activeX = NO_POSITION;
+    }
+
+    /**
+     * Returns the number of ghosts captured so far in this game.
+     *
+     * @return the number of ghosts the player has defeated
+     */
+    public int getGhostsCaptured() {
+        return ghostsCaptured;
+    }
+
+    /**
+     * Returns the seed this engine's random number generator was created
+     * with. Creating a new engine with this seed and playing the same
+     * commands reproduces the game exactly.
+     *
+     * @return the random seed of this engine
+     */
+    public long getSeed() {
+        return seed;
+    }
+
+    /**
+     * Returns a Zobrist hash of the current state of the game: the tiles of
+     * the level (so sealed breaches count), the player's position, energy
+     * (to the nearest Zobrist.ENERGY_BUCKET points) and whether it carries a
+     * ghost, and the position of every ghost. The level and ghost parts are
+     * kept up to date by every tile change and ghost move; the player part
+     * is only three keys and is worked out here. States that differ only in
+     * ghost health, turn number or random number generator state hash the
+     * same, which is what a search wants when it asks whether it has seen a
+     * position before.
+     *
+     * @return the hash of the current state, or 0 if the game has not been
+     * started
+     */
+    public long getStateHash() {
+        if (player == null) {
+            return 0;
+        }
+        long h = level.getHash() ^ ghosts.getHash()
+                ^ Zobrist.player(player.getY() * level.getWidth() + player.getX())
+                ^ Zobrist.energy(player.getEnergy());
+        return player.hasGhost() ? h ^ Zobrist.carrying() : h;
+    }
+
+    /**
+     * Returns the Player object for the current game.
+     *
+     * @return the current player, or null if the game has not been started
+     */
+    public Player getPlayer() {
+        return player;
+    }
+
+    /**
+     * Returns the tiles of the current level. The grid is the engine's own
+     * and must not be changed by the caller.
+     *
+     * @return the current level
+     */
+    LevelGrid getLevel() {
+        return level;
+    }
+
+    /**
+     * Returns the window of a world game.
+     *
+     * @return the window onto the world, or null for a game of separate
+     * levels
+     */
+    LevelWindow getWindow() {
+        return window;
+    }
+
+    /**
+     * Returns the ghosts of the current level. The store is the engine's own
+     * and is changed by every turn.
+     *
+     * @return the current ghost store
+     */
+    GhostStore getGhosts() {
+        return ghosts;
+    }
+
+    /**
+     * Returns the number of steps from a tile to the nearest bank, walking
+     * around walls.
+     *
+     * @param x The X co-ordinate of the tile
+     * @param y The Y co-ordinate of the tile
+     * @return the path distance, or DistanceField.UNREACHABLE
+     */
+    int getBankDistance(int x, int y) {
+        return bankDistance.get(x, y);
+    }
+
+    /**
+     * Gives the engine's random number generator a new state, so that the
+     * ghosts make different random moves from now on. Used by searches that
+     * restore the same snapshot many times and want to see different
+     * futures from it.
+     *
+     * @param state The new state of the random number generator
+     */
+    void reseedRandom(long state) {
+        rng.setState(state);
+    }
+
+    /**
+     * Replaces the ghosts in the current level with copies of the given
+     * ghosts, all of normal speed. Only intended for benchmarks and
+     * simulations that need a level with a particular number of ghosts.
+     *
+     * @param ghosts the new ghosts, elements may be null
+     */
+    void setGhosts(Ghost[] ghosts) {
+        this.ghosts = GhostStore.of(level.getWidth(), level.getHeight(), ghosts, clock);
+        activeX = NO_POSITION;
     }
 }
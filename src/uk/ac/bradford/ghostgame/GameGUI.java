@@ -1,25 +1,39 @@
 package uk.ac.bradford.ghostgame;
 
 import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.EventQueue;
 import java.awt.Graphics;
 import java.awt.Graphics2D;
+import java.awt.Point;
+import java.awt.Rectangle;
 import java.awt.geom.Rectangle2D;
 import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.IOException;
+import java.util.concurrent.atomic.AtomicReference;
 import javax.imageio.ImageIO;
 import javax.swing.JFrame;
 import javax.swing.JPanel;
+import javax.swing.SwingUtilities;
 import uk.ac.bradford.ghostgame.GameEngine.TileType;
 
 /**
  * The GameGUI class is responsible for rendering graphics to the screen to
  * display the game level, player and ghosts. The GameGUI class passes keyboard
- * events to a registered GameInputHandler to be handled.
+ * events to a registered GameInputHandler to be handled. It is the
+ * RenderListener used by a GameEngine when the game is played on screen.
+ *
+ * Normally the window is repainted by Swing whenever a turn has been played.
+ * A GameGUI created for real-time play (with a number of ticks per second)
+ * instead draws itself with active rendering: once startActiveRendering has
+ * been called, an ActiveRenderThread draws frames at a steady rate into a
+ * BufferStrategy, sliding the player and ghosts between the positions of the
+ * last two turns so that they move smoothly however long turns take.
  *
  * @author prtrundl
  */
-public class GameGUI extends JFrame {
+public class GameGUI extends JFrame implements RenderListener {
 
     /**
      * The three final int attributes below set the size of some graphical
@@ -31,17 +45,81 @@ public class GameGUI extends JFrame {
     public static final int TILE_HEIGHT = 32;
     public static final int BAR_HEIGHT = 3;
 
+    /**
+     * The number of tiles the window shows across and down when it opens. A
+     * level of the default size fits exactly; larger levels scroll.
+     */
+    public static final int VIEW_COLUMNS = GameEngine.LEVEL_WIDTH;
+    public static final int VIEW_ROWS = GameEngine.LEVEL_HEIGHT;
+
     /**
      * The canvas is the area that graphics are drawn to. It is an internal
      * class of the GameGUI class.
      */
     Canvas canvas;
 
+    /**
+     * The level most recently passed to updateDisplay, its modification count
+     * at that time, and the copy of it used in frames. A new copy is only
+     * made when the level changes. These are only used by the engine thread.
+     */
+    private LevelGrid levelSource;
+    private int levelSourceMod;
+    private LevelGrid levelCopy;
+    private int levelGeneration;
+
+    /**
+     * The newest frame that has not been shown yet. The engine thread puts
+     * frames here and the event dispatch thread takes them, so if the engine
+     * produces frames faster than they can be drawn the older ones are simply
+     * replaced.
+     */
+    private final AtomicReference<Frame> pendingFrame = new AtomicReference<Frame>();
+
+    /**
+     * The number of nanoseconds between turns in real-time play, or 0 if
+     * the window is repainted by Swing after every turn.
+     */
+    private final long tickNanos;
+
+    /**
+     * The newest frame, for the render thread in real-time play, and the
+     * frame before it, which only the engine thread uses.
+     */
+    private final AtomicReference<Frame> latestFrame = new AtomicReference<Frame>();
+    private Frame lastFrame;
+
+    /**
+     * Runs on the event dispatch thread to pass the newest pending frame to
+     * the canvas.
+     */
+    private final Runnable showPendingFrame = new Runnable() {
+        @Override
+        public void run() {
+            Frame f = pendingFrame.getAndSet(null);
+            if (f != null) {
+                canvas.update(f);
+            }
+        }
+    };
+
     /**
      * Constructor for the GameGUI class. It calls the initGUI method to
      * generate the required objects for display.
      */
     public GameGUI() {
+        this(0);
+    }
+
+    /**
+     * Creates a GameGUI for real-time play, where turns are played at a fixed
+     * rate whether or not keys are pressed.
+     *
+     * @param ticksPerSecond The number of turns played each second, or 0 for
+     * a GUI that is repainted by Swing after every turn
+     */
+    public GameGUI(int ticksPerSecond) {
+        tickNanos = ticksPerSecond > 0 ? 1000000000L / ticksPerSecond : 0;
         initGUI();
     }
 
@@ -61,31 +139,88 @@ public class GameGUI extends JFrame {
      */
     private void initGUI() {
         add(canvas = new Canvas());     //adds canvas to this frame
+        canvas.setPreferredSize(new Dimension(VIEW_COLUMNS * TILE_WIDTH, VIEW_ROWS * TILE_HEIGHT));
         setTitle("BoastGusters");
-        setSize(1136, 615);
+        pack();                         //sizes the frame around the canvas
         setLocationRelativeTo(null);        //sets position of frame on screen
         setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
     }
 
+    /**
+     * Starts drawing the game with an ActiveRenderThread. Only for a GUI
+     * created with a number of ticks per second; must be called on the
+     * event dispatch thread once the window is visible. From then on Swing
+     * no longer paints the canvas.
+     *
+     * @param framesPerSecond The number of frames to draw each second
+     */
+    public void startActiveRendering(int framesPerSecond) {
+        if (tickNanos == 0) {
+            throw new IllegalStateException("Not a real-time GUI");
+        }
+        setIgnoreRepaint(true);
+        canvas.setIgnoreRepaint(true);
+        canvas.setActive(true);
+        createBufferStrategy(2);
+        new ActiveRenderThread(this, getBufferStrategy(), framesPerSecond).start();
+    }
+
+    /**
+     * Draws the newest frame for the render thread. The player and ghosts
+     * are drawn part of the way from their previous positions to their
+     * current ones, depending on how much of a tick has passed since the
+     * frame was made.
+     *
+     * @param g The graphics of the whole window to draw with
+     * @param now The current value of System.nanoTime
+     */
+    void renderFrame(Graphics2D g, long now) {
+        Frame f = latestFrame.get();
+        Point origin = SwingUtilities.convertPoint(canvas, 0, 0, this);
+        g.translate(origin.x, origin.y);
+        g.clipRect(0, 0, canvas.getWidth(), canvas.getHeight());
+        double alpha = f == null ? 1 : Math.min(1, Math.max(0, (double) (now - f.time) / tickNanos));
+        canvas.render(g, f, alpha);
+    }
+
     /**
      * Method to update the graphical elements on the screen, usually after
      * player and/or ghosts have moved when a keyboard event was handled. The
      * method requires three arguments and displays corresponding information on
-     * the screen.
+     * the screen. It is called on the engine thread: it copies what needs to
+     * be drawn into a Frame and hands the Frame to the event dispatch thread,
+     * so the objects passed in are never read while the engine changes them.
      *
-     * @param tiles A 2-dimensional array of TileTypes. This is the tiles of the
-     * current game level that should be drawn to the screen.
+     * @param tiles A LevelGrid holding the tiles of the current game level that
+     * should be drawn to the screen.
      * @param player An Player object. This object is used to draw the player in
      * the right tile and display its energy. null can be passed for this
      * argument, in which case no player will be drawn.
-     * @param ghosts An array of Ghost objects that is processed to
-     * draw ghosts with a health bar in tiles. null can be passed for this
-     * argument in which case no ghosts will be drawn. Elements in the
-     * ghosts array can also be null, in which case nothing will be drawn for that
-     * array element.
-     */
-    public void updateDisplay(TileType[][] tiles, Player player, Ghost[] ghosts) {
-        canvas.update(tiles, player, ghosts);
+     * @param ghosts A GhostStore that is processed to draw ghosts with a
+     * health bar in tiles. null can be passed for this argument in which case
+     * no ghosts will be drawn.
+     */
+    @Override
+    public void updateDisplay(LevelGrid tiles, Player player, GhostStore ghosts) {
+        if (tiles != levelSource) {
+            levelGeneration++;
+        }
+        if (tiles == null) {
+            levelCopy = null;
+        } else if (tiles != levelSource || tiles.getModCount() != levelSourceMod) {
+            levelCopy = new LevelGrid(tiles);
+            levelSourceMod = tiles.getModCount();
+        }
+        levelSource = tiles;
+        if (tickNanos != 0) {
+            lastFrame = new Frame(levelCopy, levelGeneration, player, ghosts, lastFrame);
+            latestFrame.set(lastFrame);
+            return;
+        }
+        Frame f = new Frame(levelCopy, levelGeneration, player, ghosts, null);
+        if (pendingFrame.getAndSet(f) == null) {
+            EventQueue.invokeLater(showPendingFrame);
+        }
     }
 
 }
@@ -94,6 +229,12 @@ public class GameGUI extends JFrame {
  * Internal class used to draw elements within a JPanel. The Canvas class loads
  * images from an asset folder inside the main project folder.
  *
+ * The canvas shows a viewport onto the level: a window of tiles the size of
+ * the canvas, centred on the player where possible and kept inside the level,
+ * that scrolls as the player moves. Only tiles and entities inside the
+ * viewport are drawn, so the cost of painting depends on the size of the
+ * canvas and not on the size of the level.
+ *
  * @author prtrundl
  */
 class Canvas extends JPanel {
@@ -108,9 +249,44 @@ class Canvas extends JPanel {
     private BufferedImage bank;
     private BufferedImage breach;
 
-    TileType[][] currentTiles;  //the current 2D array of tiles to display
-    Player currentPlayer;       //the current player object to be drawn
-    Ghost[] currentGhosts;   //the current array of ghosts to draw
+    Frame current;              //the current frame to display, null before the game starts
+
+    /**
+     * True once the canvas is drawn by an ActiveRenderThread instead of by
+     * Swing, after which paintComponent draws nothing.
+     */
+    private volatile boolean active;
+
+    /**
+     * Image holding the tiles inside the viewport. Tiles only change when a
+     * level is generated or a breach changes, so the tiles are drawn into this
+     * image once and only changed tiles are redrawn until the viewport moves.
+     * Painting the canvas then copies this image instead of drawing every
+     * tile again.
+     */
+    private BufferedImage levelLayer;
+
+    /**
+     * The TileType drawn into levelLayer for every tile of the viewport, row
+     * by row, or null for parts of the viewport outside the level. Compared
+     * with the current level to find the tiles that need redrawing.
+     */
+    private TileType[] layerTiles;
+
+    /**
+     * The levelGeneration of the frame levelLayer was drawn from.
+     */
+    private int layerGeneration;
+
+    /**
+     * The level co-ordinates of the top left tile of the viewport, and the
+     * number of tiles across and down it, including any partly visible
+     * tiles at the right and bottom edges.
+     */
+    private int viewX;
+    private int viewY;
+    private int viewColumns;
+    private int viewRows;
 
     /**
      * Constructor that loads tile images for use in this class
@@ -160,19 +336,209 @@ class Canvas extends JPanel {
 
     /**
      * Updates the current graphics on the screen to display the tiles, player
-     * and ghosts
+     * and ghosts of a new frame. Only the tiles that have changed since the
+     * previous frame and the tiles that the player and ghosts moved from or to
+     * are repainted, unless a new level is being displayed. Must be called on
+     * the event dispatch thread.
+     *
+     * @param f The Frame to display
+     */
+    public void update(Frame f) {
+        Frame previous = current;
+        current = f;
+        if (updateLevelLayer() || previous == null) {
+            repaint();
+            return;
+        }
+        repaintEntities(previous);
+        repaintEntities(f);
+    }
+
+    /**
+     * Hands drawing the canvas over to an ActiveRenderThread, or back to
+     * Swing.
+     *
+     * @param active true if the canvas is drawn with render
+     */
+    void setActive(boolean active) {
+        this.active = active;
+    }
+
+    /**
+     * Draws a frame for active rendering. Called on the render thread only,
+     * which then owns all of the canvas's drawing state. The player and
+     * ghosts are drawn alpha of the way from their from positions to their
+     * current positions.
      *
-     * @param t The 2D array of TileTypes representing the current level of the
-     * game
-     * @param player The current player object, used to draw the player and its
-     * energy
-     * @param ghosts The array of ghosts to display on the level with their health bar
-     */
-    public void update(TileType[][] t, Player player, Ghost[] ghosts) {
-        currentTiles = t;
-        currentPlayer = player;
-        currentGhosts = ghosts;
-        repaint();
+     * @param g The graphics to draw with, translated to the canvas
+     * @param f The Frame to draw, or null before the game starts
+     * @param alpha How far entities have moved, from 0 to 1
+     */
+    void render(Graphics2D g, Frame f, double alpha) {
+        long start = GameMetrics.start();
+        g.setColor(getBackground());
+        g.fillRect(0, 0, getWidth(), getHeight());
+        if (f != current || (levelLayer != null
+                && (levelLayer.getWidth() != viewWidth(getWidth(), GameGUI.TILE_WIDTH)
+                || levelLayer.getHeight() != viewWidth(getHeight(), GameGUI.TILE_HEIGHT)))) {
+            current = f;
+            if (f != null) {
+                updateLevelLayer();
+            }
+        }
+        drawLevel(g, alpha);
+        GameMetrics.stop(GameMetrics.PAINT, start);
+    }
+
+    /**
+     * Repaints the tiles of the player and every ghost in a frame.
+     *
+     * @param f The Frame whose entities are repainted
+     */
+    private void repaintEntities(Frame f) {
+        if (f.hasPlayer) {
+            repaintTile(f.playerX, f.playerY);
+        }
+        for (int i = 0; i < f.ghostCount; i++) {
+            repaintTile(f.ghostX[i], f.ghostY[i]);
+        }
+    }
+
+    /**
+     * Brings levelLayer up to date with the tiles of the current frame,
+     * redrawing only the tiles that have changed and repainting them on
+     * screen. The viewport is moved first to follow the player; if it moves,
+     * or the canvas changes size, every tile in it is redrawn.
+     *
+     * @return true if the whole viewport was redrawn (a new level, a moved
+     * viewport or the first update), in which case the whole canvas needs
+     * repainting
+     */
+    private boolean updateLevelLayer() {
+        LevelGrid t = current.level;
+        if (t == null) {
+            levelLayer = null;
+            return true;
+        }
+        int columns = viewWidth(getWidth(), GameGUI.TILE_WIDTH) / GameGUI.TILE_WIDTH;
+        int rows = viewWidth(getHeight(), GameGUI.TILE_HEIGHT) / GameGUI.TILE_HEIGHT;
+        int newX = viewX;
+        int newY = viewY;
+        if (current.hasPlayer) {
+            //the last column and row may only be partly visible
+            newX = viewOrigin(current.playerX, getWidth() / GameGUI.TILE_WIDTH, t.getWidth());
+            newY = viewOrigin(current.playerY, getHeight() / GameGUI.TILE_HEIGHT, t.getHeight());
+        }
+        boolean full = current.levelGeneration != layerGeneration || levelLayer == null
+                || columns != viewColumns || rows != viewRows || newX != viewX || newY != viewY;
+        if (full) {
+            viewColumns = columns;
+            viewRows = rows;
+            viewX = newX;
+            viewY = newY;
+            int w = columns * GameGUI.TILE_WIDTH;
+            int h = rows * GameGUI.TILE_HEIGHT;
+            if (levelLayer == null || levelLayer.getWidth() != w || levelLayer.getHeight() != h) {
+                levelLayer = new BufferedImage(w, h, BufferedImage.TYPE_INT_RGB);
+            }
+            Graphics2D g2 = levelLayer.createGraphics();
+            g2.setColor(getBackground());       //for any part outside the level
+            g2.fillRect(0, 0, w, h);
+            g2.dispose();
+            layerTiles = new TileType[columns * rows];
+            layerGeneration = current.levelGeneration;
+        }
+        Graphics2D g2 = levelLayer.createGraphics();
+        int endX = Math.min(t.getWidth(), viewX + viewColumns);
+        int endY = Math.min(t.getHeight(), viewY + viewRows);
+        for (int y = viewY; y < endY; y++) {
+            int i = (y - viewY) * viewColumns;
+            for (int x = viewX; x < endX; x++, i++) {
+                TileType type = t.get(x, y);
+                if (layerTiles[i] != type) {
+                    layerTiles[i] = type;
+                    g2.drawImage(tileImage(type), (x - viewX) * GameGUI.TILE_WIDTH, (y - viewY) * GameGUI.TILE_HEIGHT, null);
+                    if (!full) {
+                        repaintTile(x, y);
+                    }
+                }
+            }
+        }
+        g2.dispose();
+        return full;
+    }
+
+    /**
+     * Rounds a size of the canvas up to a whole number of tiles, at least
+     * one.
+     *
+     * @param pixels The width or height of the canvas
+     * @param tile The width or height of a tile
+     * @return the width or height of the viewport in pixels
+     */
+    private static int viewWidth(int pixels, int tile) {
+        return Math.max(1, (pixels + tile - 1) / tile) * tile;
+    }
+
+    /**
+     * Works out the first tile of the viewport along one axis, so that the
+     * player is in the middle of the viewport unless that would show space
+     * beyond the edge of the level.
+     *
+     * @param player The player's co-ordinate along the axis
+     * @param visible The number of whole tiles the canvas shows along the axis
+     * @param size The size of the level along the axis
+     * @return the co-ordinate of the first tile in the viewport
+     */
+    private static int viewOrigin(int player, int visible, int size) {
+        return Math.max(0, Math.min(player - visible / 2, size - visible));
+    }
+
+    /**
+     * Asks Swing to repaint the area of a single tile, if it is inside the
+     * viewport.
+     *
+     * @param x The X co-ordinate of the tile, ignored if negative
+     * @param y The Y co-ordinate of the tile
+     */
+    private void repaintTile(int x, int y) {
+        if (x >= 0 && inView(x, y)) {
+            repaint((x - viewX) * GameGUI.TILE_WIDTH, (y - viewY) * GameGUI.TILE_HEIGHT, GameGUI.TILE_WIDTH, GameGUI.TILE_HEIGHT);
+        }
+    }
+
+    /**
+     * Checks whether a tile is inside the viewport.
+     *
+     * @param x The X co-ordinate of the tile
+     * @param y The Y co-ordinate of the tile
+     * @return true if the tile is at least partly on screen
+     */
+    private boolean inView(int x, int y) {
+        return x >= viewX && y >= viewY && x < viewX + viewColumns && y < viewY + viewRows;
+    }
+
+    /**
+     * Returns the image used to draw a type of tile.
+     *
+     * @param type The TileType to find the image for
+     * @return the image for that tile type
+     */
+    private BufferedImage tileImage(TileType type) {
+        switch (type) {
+            case FLOOR1:
+                return floor1;
+            case FLOOR2:
+                return floor2;
+            case WALL:
+                return wall;
+            case BANK:
+                return bank;
+            case DOOR:
+                return door;
+            default:
+                return breach;
+        }
     }
 
     /**
@@ -183,86 +549,136 @@ class Canvas extends JPanel {
      */
     @Override
     public void paintComponent(Graphics g) {
+        if (active) {
+            return;
+        }
+        long start = GameMetrics.start();
+        RepaintCompletedEvent event = new RepaintCompletedEvent();
+        event.begin();
+        Rectangle clip = g.getClipBounds();
         super.paintComponent(g);
-        drawLevel(g);
+        if (current != null && current.level != null && levelLayer != null
+                && (levelLayer.getWidth() != viewWidth(getWidth(), GameGUI.TILE_WIDTH)
+                || levelLayer.getHeight() != viewWidth(getHeight(), GameGUI.TILE_HEIGHT))) {
+            updateLevelLayer();     //the canvas has changed size since the last frame
+        }
+        drawLevel(g, 1);
+        event.end();
+        if (event.shouldCommit()) {
+            event.clipWidth = clip != null ? clip.width : getWidth();
+            event.clipHeight = clip != null ? clip.height : getHeight();
+            event.ghostCount = current != null ? current.ghostCount : 0;
+            event.commit();
+        }
+        GameMetrics.stop(GameMetrics.PAINT, start);
     }
 
     /**
      * Draws graphical elements to the screen to display the current game
-     * level tiles, the player and the ghosts. If the currentTiles, currentPlayer or currentGhosts
-     * objects are null they will not be drawn.
+     * level tiles, the player and the ghosts. The tiles are copied from the
+     * pre-drawn level layer, and only the player and ghosts inside the area
+     * being repainted are drawn. The graphics are translated so that
+     * everything is drawn at its position in the level and the viewport
+     * lands at the top left of the canvas. Nothing is drawn before the first
+     * frame arrives.
      *
      * @param g
+     * @param alpha How far the player and ghosts are drawn from their from
+     * positions to their current positions, 1 to draw them where they are
      */
-    private void drawLevel(Graphics g) {
+    private void drawLevel(Graphics g, double alpha) {
         Graphics2D g2 = (Graphics2D) g;
-        if (currentTiles != null) {
-            for (int i = 0; i < currentTiles.length; i++) {
-                for (int j = 0; j < currentTiles[i].length; j++) {
-                    switch (currentTiles[i][j]) {
-                        case FLOOR1:
-                            g2.drawImage(floor1, i * GameGUI.TILE_WIDTH, j * GameGUI.TILE_HEIGHT, null);
-                            break;
-                        case FLOOR2:
-                            g2.drawImage(floor2, i * GameGUI.TILE_WIDTH, j * GameGUI.TILE_HEIGHT, null);
-                            break;
-                        case WALL:
-                            g2.drawImage(wall, i * GameGUI.TILE_WIDTH, j * GameGUI.TILE_HEIGHT, null);
-                            break;
-                        case BANK:
-                            g2.drawImage(bank, i * GameGUI.TILE_WIDTH, j * GameGUI.TILE_HEIGHT, null);
-                            break;
-                        case DOOR:
-                            g2.drawImage(door, i * GameGUI.TILE_WIDTH, j * GameGUI.TILE_HEIGHT, null);
-                            break;
-                        case BREACH:
-                            g2.drawImage(breach, i * GameGUI.TILE_WIDTH, j * GameGUI.TILE_HEIGHT, null);
-                    }
-                }
-            }
+        Frame f = current;
+        if (f == null) {
+            return;
         }
-        if (currentGhosts != null) {
-            for (Ghost gst : currentGhosts) {
-                if (gst != null) {
-                    g2.drawImage(ghost, gst.getX() * GameGUI.TILE_WIDTH, gst.getY() * GameGUI.TILE_HEIGHT, null);
-                    drawHealthBar(g2, gst);
-                }
+        g2.translate(-viewX * GameGUI.TILE_WIDTH, -viewY * GameGUI.TILE_HEIGHT);
+        Rectangle clip = g2.getClipBounds();
+        if (levelLayer != null) {
+            g2.drawImage(levelLayer, viewX * GameGUI.TILE_WIDTH, viewY * GameGUI.TILE_HEIGHT, null);
+        }
+        for (int i = 0; i < f.ghostCount; i++) {
+            int x = f.ghostX[i];
+            int y = f.ghostY[i];
+            if (inView(x, y) && inClip(clip, x, y)) {
+                int px = slide(f.ghostFromX[i], x, alpha, GameGUI.TILE_WIDTH);
+                int py = slide(f.ghostFromY[i], y, alpha, GameGUI.TILE_HEIGHT);
+                g2.drawImage(ghost, px, py, null);
+                drawHealthBar(g2, px, py, f.ghostHealth[i], f.ghostMaxHealth[i]);
             }
         }
-        if (currentPlayer != null) {
-            g2.drawImage(currentPlayer.hasGhost() ? playerfull : player, currentPlayer.getX() * GameGUI.TILE_WIDTH, currentPlayer.getY() * GameGUI.TILE_HEIGHT, null);
-            drawEnergyBar(g2, currentPlayer);
+        if (f.hasPlayer && inClip(clip, f.playerX, f.playerY)) {
+            int px = slide(f.playerFromX, f.playerX, alpha, GameGUI.TILE_WIDTH);
+            int py = slide(f.playerFromY, f.playerY, alpha, GameGUI.TILE_HEIGHT);
+            g2.drawImage(f.playerHasGhost ? playerfull : player, px, py, null);
+            drawEnergyBar(g2, px, py, f.playerEnergy, f.playerMaxEnergy);
         }
         g2.dispose();
     }
 
     /**
-     * Draws a health bar for the given Ghost at the bottom of the tile that
-     * the Ghost is located in.
+     * Works out where to draw an entity along one axis as it slides from one
+     * tile to another.
+     *
+     * @param from The co-ordinate of the tile the entity slides from
+     * @param to The co-ordinate of the tile the entity slides to
+     * @param alpha How far it has got, from 0 to 1
+     * @param tile The width or height of a tile
+     * @return the pixel co-ordinate to draw the entity at
+     */
+    private static int slide(int from, int to, double alpha, int tile) {
+        if (from == to || alpha >= 1) {
+            return to * tile;
+        }
+        return (int) Math.round((from + (to - from) * alpha) * tile);
+    }
+
+    /**
+     * Checks whether a tile overlaps the area being painted.
+     *
+     * @param clip The area being painted, or null for everything
+     * @param x The X co-ordinate of the tile
+     * @param y The Y co-ordinate of the tile
+     * @return true if something drawn on the tile needs to be drawn
+     */
+    private boolean inClip(Rectangle clip, int x, int y) {
+        return clip == null || clip.intersects(x * GameGUI.TILE_WIDTH,
+                y * GameGUI.TILE_HEIGHT, GameGUI.TILE_WIDTH, GameGUI.TILE_HEIGHT);
+    }
+
+    /**
+     * Draws a health bar for a ghost at the bottom of the tile that the ghost
+     * is located in.
      *
      * @param g2 The graphics object to use for drawing
-     * @param g The ghost that the health bar will be drawn for
+     * @param x The X pixel co-ordinate the ghost is drawn at
+     * @param y The Y pixel co-ordinate the ghost is drawn at
+     * @param health The current health of the ghost
+     * @param maxHealth The maximum health of the ghost
      */
-    private void drawHealthBar(Graphics2D g2, Ghost g) {
-        double remainingHealth = (double) g.getHealth() / (double) g.getMaxHealth();
+    private void drawHealthBar(Graphics2D g2, int x, int y, int health, int maxHealth) {
+        double remainingHealth = (double) health / (double) maxHealth;
         g2.setColor(Color.RED);
-        g2.fill(new Rectangle2D.Double(g.getX() * GameGUI.TILE_WIDTH, g.getY() * GameGUI.TILE_HEIGHT + 29, GameGUI.TILE_WIDTH, GameGUI.BAR_HEIGHT));
+        g2.fill(new Rectangle2D.Double(x, y + 29, GameGUI.TILE_WIDTH, GameGUI.BAR_HEIGHT));
         g2.setColor(Color.GREEN);
-        g2.fill(new Rectangle2D.Double(g.getX() * GameGUI.TILE_WIDTH, g.getY() * GameGUI.TILE_HEIGHT + 29, GameGUI.TILE_WIDTH * remainingHealth, GameGUI.BAR_HEIGHT));
+        g2.fill(new Rectangle2D.Double(x, y + 29, GameGUI.TILE_WIDTH * remainingHealth, GameGUI.BAR_HEIGHT));
     }
 
     /**
-     * Draws an energy bar for the given Player at the bottom of the tile that
-     * the Player is located in.
+     * Draws an energy bar for the player at the bottom of the tile that the
+     * player is located in.
      *
      * @param g2 The graphics object to use for drawing
-     * @param p The Player that the energy bar will be drawn for
+     * @param x The X pixel co-ordinate the player is drawn at
+     * @param y The Y pixel co-ordinate the player is drawn at
+     * @param energy The current energy of the player
+     * @param maxEnergy The maximum energy of the player
      */
-    private void drawEnergyBar(Graphics2D g2, Player p) {
-        double remainingEnergy = (double) p.getEnergy() / (double) p.getMaxEnergy();
+    private void drawEnergyBar(Graphics2D g2, int x, int y, int energy, int maxEnergy) {
+        double remainingEnergy = (double) energy / (double) maxEnergy;
         g2.setColor(Color.BLUE);
-        g2.fill(new Rectangle2D.Double(p.getX() * GameGUI.TILE_WIDTH, p.getY() * GameGUI.TILE_HEIGHT + 29, GameGUI.TILE_WIDTH, GameGUI.BAR_HEIGHT));
+        g2.fill(new Rectangle2D.Double(x, y + 29, GameGUI.TILE_WIDTH, GameGUI.BAR_HEIGHT));
         g2.setColor(Color.CYAN);
-        g2.fill(new Rectangle2D.Double(p.getX() * GameGUI.TILE_WIDTH, p.getY() * GameGUI.TILE_HEIGHT + 29, GameGUI.TILE_WIDTH * remainingEnergy, GameGUI.BAR_HEIGHT));
+        g2.fill(new Rectangle2D.Double(x, y + 29, GameGUI.TILE_WIDTH * remainingEnergy, GameGUI.BAR_HEIGHT));
     }
 }
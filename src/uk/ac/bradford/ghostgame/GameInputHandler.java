@@ -6,21 +6,22 @@ import java.awt.event.KeyListener;
 /**
  * This class handles keyboard events (key presses) captured by a GameGUI object
  * that are passed to an instance of this class. The class is responsible for
- * calling methods in the GameEngine class that will update tiles, players and
- * ghosts for the various key presses that are handled.
+ * turning key presses into Commands and queueing them on the EngineThread,
+ * which calls the methods in the GameEngine class that update tiles, players
+ * and ghosts. No game logic runs on the Swing event dispatch thread.
  * @author prtrundl
  */
 public class GameInputHandler implements KeyListener {
 
-    GameEngine engine;      //GameEngine that this class calls methods from
+    EngineThread engine;    //EngineThread that this class queues commands on
     
     /**
      * Constructor that forms a connection between a GameInputHandler object and
-     * a GameEngine object. The GameEngine object registered here is the one that will
-     * have methods called to change player and ghost positions etc.
-     * @param eng The GameEngine object that this GameInputHandler is linked to
+     * an EngineThread object. The EngineThread registered here is the one that will
+     * be given commands to change player and ghost positions etc.
+     * @param eng The EngineThread object that this GameInputHandler is linked to
      */
-    public GameInputHandler(GameEngine eng) {
+    public GameInputHandler(EngineThread eng) {
         engine = eng;
     }
     
@@ -32,21 +33,26 @@ public class GameInputHandler implements KeyListener {
     public void keyTyped(KeyEvent e) {}
 
     /**
-     * Method to handle key presses captured by the GameGUI. The method currently
-     * calls the game engine to process a game turn for any key press, but if the up,
-     * down, left or right arrow keys are pressed it also calls methods in the
-     * engine to update the game by moving the player (and ghosts if implemented)
+     * Method to handle key presses captured by the GameGUI. Any key press queues
+     * a game turn on the engine thread; the up, down, left and right arrow keys
+     * also move the player, Home, Page Up, End and Page Down (7, 9, 1 and 3 on
+     * the number pad) move the player diagonally, any other key makes the
+     * player wait.
      * @param e A KeyEvent object generated when a keyboard key is pressed
      */
     @Override
     public void keyPressed(KeyEvent e) {
         switch (e.getKeyCode()) {
-            case KeyEvent.VK_LEFT: engine.movePlayerLeft(); break;  //handle left arrow key
-            case KeyEvent.VK_RIGHT: engine.movePlayerRight(); break;//handle right arrow
-            case KeyEvent.VK_UP: engine.movePlayerUp(); break;      //handle up arrow
-            case KeyEvent.VK_DOWN: engine.movePlayerDown(); break;  //handle down arrow
+            case KeyEvent.VK_LEFT: engine.submit(Command.LEFT); break;  //handle left arrow key
+            case KeyEvent.VK_RIGHT: engine.submit(Command.RIGHT); break;//handle right arrow
+            case KeyEvent.VK_UP: engine.submit(Command.UP); break;      //handle up arrow
+            case KeyEvent.VK_DOWN: engine.submit(Command.DOWN); break;  //handle down arrow
+            case KeyEvent.VK_HOME: engine.submit(Command.UP_LEFT); break;       //numpad 7
+            case KeyEvent.VK_PAGE_UP: engine.submit(Command.UP_RIGHT); break;   //numpad 9
+            case KeyEvent.VK_END: engine.submit(Command.DOWN_LEFT); break;      //numpad 1
+            case KeyEvent.VK_PAGE_DOWN: engine.submit(Command.DOWN_RIGHT); break;//numpad 3
+            default: engine.submit(Command.WAIT);   //any other key still plays a turn
         }
-        engine.doTurn();    //any key press will result in this method being called
     }
 
     /**
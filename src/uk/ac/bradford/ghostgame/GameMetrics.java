@@ -0,0 +1,180 @@
+package uk.ac.bradford.ghostgame;
+
+import java.io.PrintStream;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * GameMetrics collects timings and counts from every GameEngine and GameGUI
+ * in the program: how long turns, player moves, ghost moves, level changes
+ * and repaints take, how evenly frames are drawn in real-time mode, and how
+ * many ghosts were hit and captured. Timings go
+ * into LatencyHistograms, counts into LongAdders, so engines running on many
+ * threads at once can all record without locking.
+ *
+ * Recording is off until setEnabled(true) is called, and while it is off the
+ * engine does not even read the clock. Launcher turns it on with the
+ * --metrics option, which also prints a summary every few seconds.
+ */
+public final class GameMetrics {
+
+    public static final LatencyHistogram TURN = new LatencyHistogram("doTurn");
+    public static final LatencyHistogram MOVE_GHOSTS = new LatencyHistogram("moveGhosts");
+    public static final LatencyHistogram NEXT_LEVEL = new LatencyHistogram("nextLevel");
+    public static final LatencyHistogram PAINT = new LatencyHistogram("paintComponent");
+
+    /**
+     * The time from the start of one actively rendered frame to the start of
+     * the next, and how far that was from the target frame time either way.
+     */
+    public static final LatencyHistogram FRAME_INTERVAL = new LatencyHistogram("frame interval");
+    public static final LatencyHistogram FRAME_JITTER = new LatencyHistogram("frame jitter");
+
+    /**
+     * One histogram for player moves in each Direction, indexed by ordinal.
+     */
+    private static final LatencyHistogram[] MOVES = new LatencyHistogram[Direction.values().length];
+
+    private static final LatencyHistogram[] HISTOGRAMS = new LatencyHistogram[MOVES.length + 6];
+
+    static {
+        for (Direction d : Direction.values()) {
+            MOVES[d.ordinal()] = new LatencyHistogram("move " + d);
+        }
+        HISTOGRAMS[0] = TURN;
+        System.arraycopy(MOVES, 0, HISTOGRAMS, 1, MOVES.length);
+        HISTOGRAMS[MOVES.length + 1] = MOVE_GHOSTS;
+        HISTOGRAMS[MOVES.length + 2] = NEXT_LEVEL;
+        HISTOGRAMS[MOVES.length + 3] = PAINT;
+        HISTOGRAMS[MOVES.length + 4] = FRAME_INTERVAL;
+        HISTOGRAMS[MOVES.length + 5] = FRAME_JITTER;
+    }
+
+    public static final LongAdder GHOSTS_HIT = new LongAdder();
+    public static final LongAdder GHOSTS_CAPTURED = new LongAdder();
+    public static final LongAdder BREACHES_SEALED = new LongAdder();
+    public static final LongAdder LEVELS_COMPLETED = new LongAdder();
+
+    private static volatile boolean enabled;
+
+    /**
+     * This class only has static members.
+     */
+    private GameMetrics() {
+    }
+
+    /**
+     * Returns the histogram for player moves in a direction.
+     *
+     * @param d The direction of the move
+     * @return the histogram GameEngine.move records into for that direction
+     */
+    public static LatencyHistogram move(Direction d) {
+        return MOVES[d.ordinal()];
+    }
+
+    /**
+     * Turns recording on or off.
+     *
+     * @param on true to record timings and counts
+     */
+    public static void setEnabled(boolean on) {
+        enabled = on;
+    }
+
+    /**
+     * Checks whether recording is on.
+     *
+     * @return true if timings and counts are being recorded
+     */
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Starts timing something. Pass the result to stop when it is done.
+     *
+     * @return the current time in nanoseconds, or 0 if recording is off
+     */
+    static long start() {
+        return enabled ? System.nanoTime() : 0;
+    }
+
+    /**
+     * Finishes timing something and records how long it took.
+     *
+     * @param h The histogram to record the time in
+     * @param start The value returned by start; nothing is recorded if it is 0
+     */
+    static void stop(LatencyHistogram h, long start) {
+        if (start != 0) {
+            h.record(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Adds one to a counter if recording is on.
+     *
+     * @param counter The counter to increase
+     */
+    static void count(LongAdder counter) {
+        if (enabled) {
+            counter.increment();
+        }
+    }
+
+    /**
+     * Prints every histogram and counter recorded so far.
+     *
+     * @param out The stream to print to
+     */
+    public static void dump(PrintStream out) {
+        for (LatencyHistogram h : HISTOGRAMS) {
+            if (h.getCount() > 0) {
+                out.println(h);
+            }
+        }
+        out.printf("ghosts hit %d, captured %d, breaches sealed %d, levels completed %d%n",
+                GHOSTS_HIT.sum(), GHOSTS_CAPTURED.sum(), BREACHES_SEALED.sum(), LEVELS_COMPLETED.sum());
+    }
+
+    /**
+     * Forgets everything recorded so far.
+     */
+    public static void reset() {
+        for (LatencyHistogram h : HISTOGRAMS) {
+            h.reset();
+        }
+        GHOSTS_HIT.reset();
+        GHOSTS_CAPTURED.reset();
+        BREACHES_SEALED.reset();
+        LEVELS_COMPLETED.reset();
+    }
+
+    /**
+     * Turns recording on and starts a daemon thread that prints a summary at
+     * a fixed interval until the program ends.
+     *
+     * @param out The stream to print to
+     * @param intervalMillis The time between summaries in milliseconds
+     * @return the thread printing the summaries
+     */
+    public static Thread startPeriodicDump(final PrintStream out, final long intervalMillis) {
+        setEnabled(true);
+        Thread t = new Thread("ghostgame-metrics") {
+            @Override
+            public void run() {
+                try {
+                    while (true) {
+                        Thread.sleep(intervalMillis);
+                        dump(out);
+                    }
+                } catch (InterruptedException e) {
+                    //interrupted, stop printing
+                }
+            }
+        };
+        t.setDaemon(true);
+        t.start();
+        return t;
+    }
+}
@@ -0,0 +1,175 @@
+package uk.ac.bradford.ghostgame;
+
+/**
+ * A small, fast random number generator used for every random choice the game
+ * makes. It is the SplitMix64 generator: the state is one long and a fixed
+ * odd step (the gamma), so it is cheap to create one per engine, and the same
+ * seed always produces the same numbers, which makes games reproducible.
+ *
+ * A GameRandom is not thread safe and is not meant to be shared. Code that
+ * runs games in parallel should give each game its own generator, either with
+ * its own seed or by calling split() on a parent generator, so that no two
+ * threads ever touch the same generator.
+ */
+public final class GameRandom {
+
+    /**
+     * The gamma of a generator created from a seed (the fractional part of the
+     * golden ratio as a 64 bit value).
+     */
+    private static final long GOLDEN_GAMMA = 0x9e3779b97f4a7c15L;
+
+    /**
+     * Used to make different unseeded generators start from different seeds.
+     */
+    private static long seedUniquifier = 0x2545F4914F6CDD1DL;
+
+    private long state;
+
+    /**
+     * The odd constant added to the state for every number generated.
+     * Generators created by split each get their own, so that their sequences
+     * are not just the parent's sequence started at another point.
+     */
+    private final long gamma;
+
+    /**
+     * Creates a generator with a fixed seed. Two generators created with the
+     * same seed produce exactly the same sequence of numbers.
+     *
+     * @param seed The seed for the generator
+     */
+    public GameRandom(long seed) {
+        this(seed, GOLDEN_GAMMA);
+    }
+
+    private GameRandom(long seed, long gamma) {
+        this.state = seed;
+        this.gamma = gamma;
+    }
+
+    /**
+     * Creates a seed for a generator that does not need to be reproducible,
+     * based on the current time.
+     *
+     * @return a seed that is very unlikely to be returned again
+     */
+    public static synchronized long randomSeed() {
+        seedUniquifier += GOLDEN_GAMMA;
+        return mix64(System.nanoTime() ^ seedUniquifier);
+    }
+
+    /**
+     * Returns the next random long value. All other methods are built on this
+     * one.
+     *
+     * @return a random long, any value is equally likely
+     */
+    public long nextLong() {
+        return mix64(nextSeed());
+    }
+
+    /**
+     * Moves the state on by one step.
+     *
+     * @return the new state
+     */
+    private long nextSeed() {
+        return state += gamma;
+    }
+
+    /**
+     * Returns a random int between 0 (inclusive) and bound (exclusive).
+     *
+     * @param bound The upper bound, must be positive
+     * @return a random int in the range 0 to bound - 1
+     */
+    public int nextInt(int bound) {
+        //multiply the top 32 random bits by bound and keep the top half; the
+        //bias this introduces is far too small to matter for a game
+        return (int) (((nextLong() >>> 32) * bound) >>> 32);
+    }
+
+    /**
+     * Returns a random double between 0.0 (inclusive) and 1.0 (exclusive).
+     *
+     * @return a random double in the range [0, 1)
+     */
+    public double nextDouble() {
+        return (nextLong() >>> 11) * 0x1.0p-53;
+    }
+
+    /**
+     * Returns a random boolean.
+     *
+     * @return true or false with equal probability
+     */
+    public boolean nextBoolean() {
+        return nextLong() < 0;
+    }
+
+    /**
+     * Returns the internal state of this generator. A generator with the same
+     * gamma (any generator not created by split) given this state with
+     * setState produces the same numbers as this one from this point on.
+     *
+     * @return the current state
+     */
+    public long getState() {
+        return state;
+    }
+
+    /**
+     * Replaces the internal state of this generator with one returned by
+     * getState.
+     *
+     * @param state The state to continue from
+     */
+    public void setState(long state) {
+        this.state = state;
+    }
+
+    /**
+     * Creates a new generator whose numbers are independent of this one's.
+     * The child gets its own seed and its own gamma, and this generator moves
+     * on by two values. Splitting the same parent in the same order always
+     * produces the same children, so a batch of games seeded by splitting one
+     * generator can be replayed exactly.
+     *
+     * @return a new generator
+     */
+    public GameRandom split() {
+        return new GameRandom(nextLong(), mixGamma(nextSeed()));
+    }
+
+    /**
+     * Turns a state into a gamma for a new generator: scrambles it, makes it
+     * odd, and if its bits change too rarely from one to the next (which
+     * would make the generator's output poor) flips every other bit.
+     *
+     * @param z The state to make a gamma from
+     * @return an odd gamma
+     */
+    private static long mixGamma(long z) {
+        z = (z ^ (z >>> 33)) * 0xff51afd7ed558ccdL;
+        z = (z ^ (z >>> 33)) * 0xc4ceb9fe1a85ec53L;
+        z = (z ^ (z >>> 33)) | 1L;
+        if (Long.bitCount(z ^ (z >>> 1)) < 24) {
+            z ^= 0xaaaaaaaaaaaaaaaaL;
+        }
+        return z;
+    }
+
+    /**
+     * The SplitMix64 finalizer: scrambles the bits of a long so that
+     * consecutive inputs give unrelated outputs.
+     *
+     * @param z The value to scramble
+     * @return the scrambled value
+     */
+    static long mix64(long z) {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+}
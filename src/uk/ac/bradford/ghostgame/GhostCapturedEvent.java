@@ -0,0 +1,26 @@
+package uk.ac.bradford.ghostgame;
+
+import jdk.jfr.Category;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * A JDK Flight Recorder event recorded when the player captures a ghost.
+ */
+@Name("uk.ac.bradford.ghostgame.GhostCaptured")
+@Label("Ghost Captured")
+@Category("Ghost Game")
+final class GhostCapturedEvent extends jdk.jfr.Event {
+
+    @Label("Turn Number")
+    int turnNumber;
+
+    @Label("Level Number")
+    int levelNumber;
+
+    @Label("X")
+    int x;
+
+    @Label("Y")
+    int y;
+}
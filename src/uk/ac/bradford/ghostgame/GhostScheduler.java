@@ -0,0 +1,246 @@
+package uk.ac.bradford.ghostgame;
+
+import java.util.Arrays;
+
+/**
+ * The GhostScheduler keeps every ghost's next action time, so that a turn
+ * only has to look at the ghosts whose time has come instead of at every
+ * ghost. Times are measured in ticks of the game clock (see
+ * GameEngine.TICKS_PER_TURN), so ghosts can act more or less often than once
+ * a turn.
+ *
+ * The scheduler is a timing wheel: a ring of WHEEL_SIZE buckets, one for each
+ * tick, where each bucket is a list of the ghosts due at that tick, linked
+ * through arrays indexed by slot. Scheduling, removing and taking the next
+ * due ghost all take constant time, however many ghosts there are. The ring
+ * only covers WHEEL_SIZE ticks from the earliest scheduled time, so no ghost
+ * may be scheduled further ahead than MAX_DELAY ticks.
+ *
+ * Ghosts due at the same tick come out in the order they were scheduled.
+ * The order is kept by write and read, so games are reproducible from their
+ * seed and from snapshots.
+ */
+final class GhostScheduler {
+
+    /**
+     * The most ticks ahead of the earliest scheduled ghost another ghost can
+     * be scheduled, and so the longest delay a ghost can have.
+     */
+    static final int MAX_DELAY = 32;
+
+    private static final int WHEEL_SIZE = 64;
+    private static final int WHEEL_MASK = WHEEL_SIZE - 1;
+
+    private static final int NONE = -1;
+
+    /**
+     * The first and last slot due at each tick of the wheel, or NONE.
+     */
+    private final int[] head = new int[WHEEL_SIZE];
+    private final int[] tail = new int[WHEEL_SIZE];
+
+    /**
+     * The time of every slot, the slots before and after it in its bucket,
+     * and whether it is scheduled.
+     */
+    private long[] time;
+    private int[] prev;
+    private int[] next;
+    private boolean[] scheduled;
+
+    /**
+     * No slot is due before this time.
+     */
+    private long cursor;
+
+    private int size;
+
+    /**
+     * Creates an empty scheduler.
+     *
+     * @param capacity The number of slots to make room for
+     */
+    GhostScheduler(int capacity) {
+        time = new long[capacity];
+        prev = new int[capacity];
+        next = new int[capacity];
+        scheduled = new boolean[capacity];
+        Arrays.fill(head, NONE);
+        Arrays.fill(tail, NONE);
+    }
+
+    /**
+     * Makes room for more slots.
+     *
+     * @param capacity The new number of slots, not less than before
+     */
+    void grow(int capacity) {
+        time = Arrays.copyOf(time, capacity);
+        prev = Arrays.copyOf(prev, capacity);
+        next = Arrays.copyOf(next, capacity);
+        scheduled = Arrays.copyOf(scheduled, capacity);
+    }
+
+    /**
+     * Returns the number of scheduled slots.
+     *
+     * @return the number of ghosts in the scheduler
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Checks whether a slot is scheduled.
+     *
+     * @param slot The slot of a ghost
+     * @return true if the ghost is in the scheduler
+     */
+    boolean isScheduled(int slot) {
+        return scheduled[slot];
+    }
+
+    /**
+     * Schedules a slot after the other slots due at the same time, or moves
+     * it to a new time if it is already scheduled.
+     *
+     * @param slot The slot of the ghost
+     * @param t The time the ghost next acts, in ticks
+     * @throws IllegalArgumentException if t is more than MAX_DELAY ticks
+     * from the times of the other scheduled ghosts
+     */
+    void schedule(int slot, long t) {
+        remove(slot);
+        if (size == 0) {
+            cursor = t;
+        } else if (t < cursor) {
+            //every bucket from t to the cursor is empty, so it can move back
+            if (last() - t > MAX_DELAY) {
+                throw new IllegalArgumentException("Ghost scheduled too far back at " + t);
+            }
+            cursor = t;
+        } else if (t - cursor > MAX_DELAY) {
+            throw new IllegalArgumentException("Ghost scheduled too far ahead at " + t);
+        }
+        int b = (int) t & WHEEL_MASK;
+        time[slot] = t;
+        prev[slot] = tail[b];
+        next[slot] = NONE;
+        if (tail[b] == NONE) {
+            head[b] = slot;
+        } else {
+            next[tail[b]] = slot;
+        }
+        tail[b] = slot;
+        scheduled[slot] = true;
+        size++;
+    }
+
+    /**
+     * Removes a slot from the scheduler. Does nothing if it is not
+     * scheduled.
+     *
+     * @param slot The slot of the ghost
+     */
+    void remove(int slot) {
+        if (!scheduled[slot]) {
+            return;
+        }
+        int b = (int) time[slot] & WHEEL_MASK;
+        if (prev[slot] == NONE) {
+            head[b] = next[slot];
+        } else {
+            next[prev[slot]] = next[slot];
+        }
+        if (next[slot] == NONE) {
+            tail[b] = prev[slot];
+        } else {
+            prev[next[slot]] = prev[slot];
+        }
+        scheduled[slot] = false;
+        size--;
+    }
+
+    /**
+     * Returns the time of the first ghost due.
+     *
+     * @return the earliest time any ghost acts, or Long.MAX_VALUE if no
+     * ghost is scheduled
+     */
+    long peekTime() {
+        if (size == 0) {
+            return Long.MAX_VALUE;
+        }
+        while (head[(int) cursor & WHEEL_MASK] == NONE) {
+            cursor++;
+        }
+        return cursor;
+    }
+
+    /**
+     * Takes the first ghost due at or before a given time out of the
+     * scheduler.
+     *
+     * @param now The current time of the game clock
+     * @return the slot of the ghost, or NONE if no ghost is due
+     */
+    int poll(long now) {
+        if (peekTime() > now) {
+            return NONE;
+        }
+        int slot = head[(int) cursor & WHEEL_MASK];
+        remove(slot);
+        return slot;
+    }
+
+    /**
+     * Returns the time a ghost is scheduled for.
+     *
+     * @param slot A scheduled slot
+     * @return the time the ghost next acts
+     */
+    long timeOf(int slot) {
+        return time[slot];
+    }
+
+    /**
+     * Returns the first scheduled ghost, in the order poll would return
+     * them.
+     *
+     * @return the slot of the ghost, or NONE if no ghost is scheduled
+     */
+    int first() {
+        return size == 0 ? NONE : head[(int) peekTime() & WHEEL_MASK];
+    }
+
+    /**
+     * Returns the scheduled ghost after another, in the order poll would
+     * return them.
+     *
+     * @param slot A scheduled slot
+     * @return the slot of the next ghost, or NONE if there are no more
+     */
+    int next(int slot) {
+        if (next[slot] != NONE) {
+            return next[slot];
+        }
+        for (long t = time[slot] + 1; t <= cursor + MAX_DELAY; t++) {
+            if (head[(int) t & WHEEL_MASK] != NONE) {
+                return head[(int) t & WHEEL_MASK];
+            }
+        }
+        return NONE;
+    }
+
+    /**
+     * Returns the latest time any ghost is scheduled for. There must be at
+     * least one.
+     */
+    private long last() {
+        for (long t = cursor + MAX_DELAY; ; t--) {
+            if (head[(int) t & WHEEL_MASK] != NONE) {
+                return t;
+            }
+        }
+    }
+}
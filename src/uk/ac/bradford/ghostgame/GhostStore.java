@@ -0,0 +1,502 @@
+package uk.ac.bradford.ghostgame;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * The GhostStore holds every ghost of a level. Instead of one Ghost object per
+ * ghost it keeps the position, health and maximum health of all ghosts in
+ * parallel int arrays, indexed by the ghost's slot, so moving every ghost in
+ * a turn reads a few arrays from start to end and creates no objects.
+ *
+ * The slots of live ghosts are kept together at the start of a second array,
+ * with free slots after them, so the live ghosts can be visited without
+ * skipping over empty slots:
+ *
+ * <pre>
+ * for (int i = 0; i &lt; store.liveCount(); i++) {
+ *     int slot = store.liveSlot(i);
+ *     ...
+ * }
+ * </pre>
+ *
+ * Removing a ghost swaps its slot with the last live slot, which then becomes
+ * the first free slot, and adding a ghost takes the first free slot. Freed
+ * slots are therefore reused before the arrays grow, and adding or removing a
+ * ghost takes constant time. When every slot is in use the arrays double in
+ * size, so any number of ghosts can be added.
+ *
+ * The store also keeps an OccupancyGrid up to date, so the ghosts standing on
+ * a tile can be found with first and next, and a Zobrist hash of the ghost
+ * positions that every move changes in constant time.
+ *
+ * Every ghost has a delay, the number of clock ticks between its actions, and
+ * a GhostScheduler holds the time each live ghost acts next, so a turn only
+ * visits the ghosts that are due (see pollDue). A ghost can also be put to
+ * sleep, which the engine does to ghosts far from the player: a dormant
+ * ghost is taken out of the scheduler and costs nothing until it is woken.
+ *
+ * The public methods only read the store and are what the GUI and player
+ * policies use to look at the ghosts; only the GameEngine changes them.
+ */
+public final class GhostStore {
+
+    /**
+     * Returned by first and next when there are no more ghosts on a tile.
+     */
+    static final int NONE = OccupancyGrid.NONE;
+
+    private int[] x;
+    private int[] y;
+    private int[] health;
+    private int[] maxHealth;
+    private int[] delay;
+    private boolean[] dormant;
+
+    /**
+     * Live slots in slots[0] to slots[live - 1], free slots after them.
+     */
+    private int[] slots;
+
+    /**
+     * The position of every slot in the slots array.
+     */
+    private int[] position;
+
+    private int live;
+
+    private final int width;
+
+    /**
+     * The sum of the Zobrist keys of the tiles every live ghost stands on.
+     */
+    private long hash;
+
+    private final OccupancyGrid occupancy;
+
+    private final GhostScheduler scheduler;
+
+    /**
+     * Creates an empty store for a level of the given size.
+     *
+     * @param width The width of the level in tiles
+     * @param height The height of the level in tiles
+     * @param capacity The number of ghosts to make room for at first
+     */
+    GhostStore(int width, int height, int capacity) {
+        capacity = Math.max(capacity, 1);
+        x = new int[capacity];
+        y = new int[capacity];
+        health = new int[capacity];
+        maxHealth = new int[capacity];
+        delay = new int[capacity];
+        dormant = new boolean[capacity];
+        slots = new int[capacity];
+        position = new int[capacity];
+        for (int i = 0; i < capacity; i++) {
+            slots[i] = i;
+            position[i] = i;
+        }
+        this.width = width;
+        occupancy = new OccupancyGrid(width, height, capacity);
+        scheduler = new GhostScheduler(capacity);
+    }
+
+    /**
+     * Creates a store holding a copy of every non-null ghost in an array. The
+     * ghosts move at the normal speed, and first act one turn after the
+     * given time.
+     *
+     * @param width The width of the level in tiles
+     * @param height The height of the level in tiles
+     * @param ghosts The ghosts to copy; elements may be null
+     * @param time The current time of the game clock
+     * @return a new store
+     */
+    static GhostStore of(int width, int height, Ghost[] ghosts, long time) {
+        GhostStore store = new GhostStore(width, height, ghosts.length);
+        for (Ghost g : ghosts) {
+            if (g != null) {
+                int slot = store.add(g.getMaxHealth(), g.getX(), g.getY(),
+                        GameEngine.GHOST_DELAY_NORMAL, time + GameEngine.GHOST_DELAY_NORMAL);
+                store.health[slot] = g.getHealth();
+            }
+        }
+        return store;
+    }
+
+    /**
+     * Returns the number of live ghosts.
+     *
+     * @return the number of ghosts in the store
+     */
+    public int liveCount() {
+        return live;
+    }
+
+    /**
+     * Returns the slot of a live ghost. The order of the live ghosts changes
+     * when a ghost is removed.
+     *
+     * @param i A number from 0 to liveCount() - 1
+     * @return the slot of the i'th live ghost
+     */
+    public int liveSlot(int i) {
+        return slots[i];
+    }
+
+    /**
+     * Returns the X co-ordinate of a ghost.
+     *
+     * @param slot The slot of a live ghost
+     * @return the X position of the ghost
+     */
+    public int getX(int slot) {
+        return x[slot];
+    }
+
+    /**
+     * Returns the Y co-ordinate of a ghost.
+     *
+     * @param slot The slot of a live ghost
+     * @return the Y position of the ghost
+     */
+    public int getY(int slot) {
+        return y[slot];
+    }
+
+    /**
+     * Returns the current health of a ghost.
+     *
+     * @param slot The slot of a live ghost
+     * @return the health of the ghost
+     */
+    public int getHealth(int slot) {
+        return health[slot];
+    }
+
+    /**
+     * Returns the maximum health of a ghost.
+     *
+     * @param slot The slot of a live ghost
+     * @return the maximum health of the ghost
+     */
+    public int getMaxHealth(int slot) {
+        return maxHealth[slot];
+    }
+
+    /**
+     * Returns the number of clock ticks between the actions of a ghost.
+     *
+     * @param slot The slot of a live ghost
+     * @return the delay of the ghost, GameEngine.TICKS_PER_TURN for a ghost
+     * that acts once a turn
+     */
+    public int getDelay(int slot) {
+        return delay[slot];
+    }
+
+    /**
+     * Checks whether a ghost is dormant.
+     *
+     * @param slot The slot of a live ghost
+     * @return true if the ghost is too far from the player to act
+     */
+    public boolean isDormant(int slot) {
+        return dormant[slot];
+    }
+
+    /**
+     * Returns the Zobrist hash of the ghost positions. It depends only on how
+     * many ghosts stand on each tile, not on their slots or their order.
+     *
+     * @return the hash of the positions of all live ghosts
+     */
+    public long getHash() {
+        return hash;
+    }
+
+    /**
+     * Adds a ghost with full health, reusing a free slot if there is one.
+     *
+     * @param maxHealth The maximum and starting health of the ghost
+     * @param x The X position of the ghost
+     * @param y The Y position of the ghost
+     * @param delay The number of clock ticks between the ghost's actions,
+     * from 1 to GhostScheduler.MAX_DELAY
+     * @param due The time the ghost first acts
+     * @return the slot of the new ghost
+     */
+    int add(int maxHealth, int x, int y, int delay, long due) {
+        if (live == slots.length) {
+            grow();
+        }
+        int slot = slots[live++];
+        this.x[slot] = x;
+        this.y[slot] = y;
+        this.health[slot] = maxHealth;
+        this.maxHealth[slot] = maxHealth;
+        this.delay[slot] = delay;
+        this.dormant[slot] = false;
+        occupancy.add(slot, x, y);
+        scheduler.schedule(slot, due);
+        hash += Zobrist.ghost(y * width + x);
+        return slot;
+    }
+
+    /**
+     * Removes a ghost. Its slot is free to be reused by the next ghost added.
+     *
+     * @param slot The slot of a live ghost
+     */
+    void remove(int slot) {
+        int i = position[slot];
+        int last = slots[--live];
+        slots[i] = last;
+        position[last] = i;
+        slots[live] = slot;
+        position[slot] = live;
+        occupancy.remove(slot);
+        scheduler.remove(slot);
+        hash -= Zobrist.ghost(y[slot] * width + x[slot]);
+    }
+
+    /**
+     * Moves a ghost.
+     *
+     * @param slot The slot of a live ghost
+     * @param x The new X position of the ghost
+     * @param y The new Y position of the ghost
+     */
+    void setPosition(int slot, int x, int y) {
+        hash += Zobrist.ghost(y * width + x) - Zobrist.ghost(this.y[slot] * width + this.x[slot]);
+        this.x[slot] = x;
+        this.y[slot] = y;
+        occupancy.move(slot, x, y);
+    }
+
+    /**
+     * Changes the health of a ghost, setting the health to its maximum if the
+     * change would take it above the maximum.
+     *
+     * @param slot The slot of a live ghost
+     * @param change The change in health, negative to damage the ghost
+     */
+    void changeHealth(int slot, int change) {
+        health[slot] = Math.min(health[slot] + change, maxHealth[slot]);
+    }
+
+    /**
+     * Returns the time the next ghost acts.
+     *
+     * @return the earliest time any live ghost is due, or Long.MAX_VALUE if
+     * there are no ghosts
+     */
+    long nextActionTime() {
+        return scheduler.peekTime();
+    }
+
+    /**
+     * Returns the ghost that acts next if it is due by a given time, and
+     * schedules its following action one delay after this one. Ghosts due at
+     * the same time are returned in the order they were scheduled.
+     *
+     * @param now The current time of the game clock
+     * @return the slot of a ghost due at or before now, or NONE
+     */
+    int pollDue(long now) {
+        int slot = scheduler.poll(now);
+        if (slot != NONE) {
+            scheduler.schedule(slot, scheduler.timeOf(slot) + delay[slot]);
+        }
+        return slot;
+    }
+
+    /**
+     * Makes a ghost dormant. It is not returned by pollDue until it is woken.
+     *
+     * @param slot The slot of a live ghost
+     */
+    void sleep(int slot) {
+        dormant[slot] = true;
+        scheduler.remove(slot);
+    }
+
+    /**
+     * Wakes a dormant ghost.
+     *
+     * @param slot The slot of a dormant ghost
+     * @param due The time the ghost next acts
+     */
+    void wake(int slot, long due) {
+        dormant[slot] = false;
+        scheduler.schedule(slot, due);
+    }
+
+    /**
+     * Returns the first ghost on the tile at X,Y.
+     *
+     * @param x The X co-ordinate of the tile
+     * @param y The Y co-ordinate of the tile
+     * @return the slot of a ghost on the tile, or NONE
+     */
+    int first(int x, int y) {
+        return occupancy.first(x, y);
+    }
+
+    /**
+     * Returns the next ghost on the same tile as a ghost.
+     *
+     * @param slot A slot returned by first or next
+     * @return the slot of the next ghost on the tile, or NONE
+     */
+    int next(int slot) {
+        return occupancy.next(slot);
+    }
+
+    /**
+     * Returns the number of bytes write puts in a buffer for this store.
+     *
+     * @return the size of the written store in bytes
+     */
+    int serializedSize() {
+        return 8 + 4 * slots.length + 25 * live + 4 + 12 * scheduler.size();
+    }
+
+    /**
+     * Writes every ghost to a buffer in a form that read turns back into a
+     * store that behaves exactly like this one: the same live slots in the
+     * same order, the same free slots to be reused in the same order, and
+     * the same order of ghosts on every tile and in the scheduler. The layout
+     * is the number of slots and of live ghosts, the slots array, the X, Y,
+     * health, maximum health, delay and dormant flag of every live ghost,
+     * the live slots in the order read must add them to the occupancy grid,
+     * and finally the number of scheduled (awake) ghosts followed by the
+     * slot and due time of each, in the order they will act.
+     *
+     * @param out The buffer to write to
+     */
+    void write(ByteBuffer out) {
+        out.putInt(slots.length);
+        out.putInt(live);
+        for (int i = 0; i < slots.length; i++) {
+            out.putInt(slots[i]);
+        }
+        for (int i = 0; i < live; i++) {
+            int s = slots[i];
+            out.putInt(x[s]).putInt(y[s]).putInt(health[s]).putInt(maxHealth[s]);
+            out.putInt(delay[s]);
+            out.put((byte) (dormant[s] ? 1 : 0));
+        }
+        //adding puts a ghost at the front of its tile's list, so each list is
+        //written from its last ghost back to its first
+        for (int i = 0; i < live; i++) {
+            int s = slots[i];
+            if (occupancy.first(x[s], y[s]) == s) {
+                int last = s;
+                while (occupancy.next(last) != NONE) {
+                    last = occupancy.next(last);
+                }
+                for (int t = last; t != NONE; t = occupancy.prev(t)) {
+                    out.putInt(t);
+                }
+            }
+        }
+        out.putInt(scheduler.size());
+        for (int s = scheduler.first(); s != NONE; s = scheduler.next(s)) {
+            out.putInt(s).putLong(scheduler.timeOf(s));
+        }
+    }
+
+    /**
+     * Reads a store written by write.
+     *
+     * @param in The buffer to read from
+     * @param width The width of the level in tiles
+     * @param height The height of the level in tiles
+     * @return a new store
+     * @throws IllegalArgumentException if the data is not a valid store
+     */
+    static GhostStore read(ByteBuffer in, int width, int height) {
+        int capacity = in.getInt();
+        int live = in.getInt();
+        if (capacity < 1 || live < 0 || live > capacity || capacity > in.remaining() / 4) {
+            throw new IllegalArgumentException("Bad ghost store size " + live + "/" + capacity);
+        }
+        GhostStore store = new GhostStore(width, height, capacity);
+        boolean[] seen = new boolean[capacity];
+        for (int i = 0; i < capacity; i++) {
+            int s = in.getInt();
+            if (s < 0 || s >= capacity || seen[s]) {
+                throw new IllegalArgumentException("Bad ghost slot " + s);
+            }
+            seen[s] = true;
+            store.slots[i] = s;
+            store.position[s] = i;
+        }
+        for (int i = 0; i < live; i++) {
+            int s = store.slots[i];
+            store.x[s] = in.getInt();
+            store.y[s] = in.getInt();
+            store.health[s] = in.getInt();
+            store.maxHealth[s] = in.getInt();
+            store.delay[s] = in.getInt();
+            store.dormant[s] = in.get() != 0;
+            if (store.delay[s] < 1 || store.delay[s] > GhostScheduler.MAX_DELAY) {
+                throw new IllegalArgumentException("Bad ghost delay " + store.delay[s]);
+            }
+            if (store.x[s] < 0 || store.y[s] < 0 || store.x[s] >= width || store.y[s] >= height) {
+                throw new IllegalArgumentException("Ghost outside the level at " + store.x[s] + "," + store.y[s]);
+            }
+        }
+        Arrays.fill(seen, false);
+        for (int i = 0; i < live; i++) {
+            int s = in.getInt();
+            if (s < 0 || s >= capacity || store.position[s] >= live || seen[s]) {
+                throw new IllegalArgumentException("Bad ghost slot " + s);
+            }
+            seen[s] = true;
+            store.occupancy.add(s, store.x[s], store.y[s]);
+            store.hash += Zobrist.ghost(store.y[s] * width + store.x[s]);
+        }
+        int awake = 0;
+        for (int i = 0; i < live; i++) {
+            awake += store.dormant[store.slots[i]] ? 0 : 1;
+        }
+        if (in.getInt() != awake) {
+            throw new IllegalArgumentException("Bad scheduled ghost count");
+        }
+        for (int i = 0; i < awake; i++) {
+            int s = in.getInt();
+            if (s < 0 || s >= capacity || store.position[s] >= live || store.dormant[s]
+                    || store.scheduler.isScheduled(s)) {
+                throw new IllegalArgumentException("Bad ghost slot " + s);
+            }
+            store.scheduler.schedule(s, in.getLong());
+        }
+        store.live = live;
+        return store;
+    }
+
+    /**
+     * Doubles the size of every array, adding the new slots as free slots.
+     */
+    private void grow() {
+        int old = slots.length;
+        int capacity = old * 2;
+        x = Arrays.copyOf(x, capacity);
+        y = Arrays.copyOf(y, capacity);
+        health = Arrays.copyOf(health, capacity);
+        maxHealth = Arrays.copyOf(maxHealth, capacity);
+        delay = Arrays.copyOf(delay, capacity);
+        dormant = Arrays.copyOf(dormant, capacity);
+        slots = Arrays.copyOf(slots, capacity);
+        position = Arrays.copyOf(position, capacity);
+        for (int i = old; i < capacity; i++) {
+            slots[i] = i;
+            position[i] = i;
+        }
+        occupancy.grow(capacity);
+        scheduler.grow(capacity);
+    }
+}
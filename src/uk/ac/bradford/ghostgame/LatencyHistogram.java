@@ -0,0 +1,181 @@
+package uk.ac.bradford.ghostgame;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A LatencyHistogram counts how many recorded durations fell into each of a
+ * fixed set of buckets, in the same way as an HDR histogram: values below 32
+ * nanoseconds get a bucket each, and every power of two above that is split
+ * into 32 buckets of equal width. Every value is therefore counted with an
+ * error of at most about 3%, from nanoseconds up to hours, in under 2000
+ * buckets.
+ *
+ * Recording a value is lock free: it increments one counter in an
+ * AtomicLongArray and updates the maximum with a compare and set, so any
+ * number of threads can record into the same histogram at once. Reading
+ * percentiles while values are being recorded gives a result that is very
+ * close to, but not exactly, a snapshot.
+ */
+public final class LatencyHistogram {
+
+    private static final int SUB_BITS = 5;
+    private static final int SUB_COUNT = 1 << SUB_BITS;
+
+    /**
+     * Enough buckets for every positive long value.
+     */
+    private static final int BUCKETS = (64 - SUB_BITS) * SUB_COUNT;
+
+    private final String name;
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Creates an empty histogram.
+     *
+     * @param name The name printed in front of the histogram's summary
+     */
+    public LatencyHistogram(String name) {
+        this.name = name;
+    }
+
+    /**
+     * Returns the name of this histogram.
+     *
+     * @return the name given to the constructor
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Records one duration.
+     *
+     * @param nanos The duration in nanoseconds; negative values count as 0
+     */
+    public void record(long nanos) {
+        if (nanos < 0) {
+            nanos = 0;
+        }
+        counts.incrementAndGet(bucket(nanos));
+        count.increment();
+        sum.add(nanos);
+        long m = max.get();
+        while (nanos > m && !max.compareAndSet(m, nanos)) {
+            m = max.get();
+        }
+    }
+
+    /**
+     * Returns the number of durations recorded.
+     *
+     * @return the number of calls to record
+     */
+    public long getCount() {
+        return count.sum();
+    }
+
+    /**
+     * Returns the longest duration recorded, exactly.
+     *
+     * @return the maximum in nanoseconds, or 0 if nothing was recorded
+     */
+    public long getMax() {
+        return max.get();
+    }
+
+    /**
+     * Returns the mean of the recorded durations.
+     *
+     * @return the mean in nanoseconds, or 0 if nothing was recorded
+     */
+    public double getMean() {
+        long n = count.sum();
+        return n == 0 ? 0 : (double) sum.sum() / n;
+    }
+
+    /**
+     * Returns the duration that the given percentage of recorded durations
+     * are shorter than or equal to, for example 99 for the 99th percentile.
+     * The result is the upper end of the bucket the percentile falls in, so
+     * it may be up to about 3% larger than the true value, but it is never
+     * larger than the maximum.
+     *
+     * @param percentile A percentage from 0 to 100
+     * @return the duration in nanoseconds, or 0 if nothing was recorded
+     */
+    public long getValueAtPercentile(double percentile) {
+        long[] c = new long[BUCKETS];
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            c[i] = counts.get(i);
+            total += c[i];
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long target = Math.max(1, (long) Math.ceil(total * percentile / 100.0));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += c[i];
+            if (seen >= target) {
+                return Math.min(highestValue(i), max.get());
+            }
+        }
+        return max.get();
+    }
+
+    /**
+     * Forgets every recorded duration. Durations recorded by other threads
+     * during the reset may be partly kept.
+     */
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            counts.set(i, 0);
+        }
+        count.reset();
+        sum.reset();
+        max.set(0);
+    }
+
+    /**
+     * Returns a one line summary: the count, 50th and 99th percentile and
+     * maximum, in microseconds.
+     *
+     * @return the summary
+     */
+    @Override
+    public String toString() {
+        return String.format("%-16s count %10d  p50 %9.1f us  p99 %9.1f us  max %9.1f us",
+                name, getCount(), getValueAtPercentile(50) / 1e3,
+                getValueAtPercentile(99) / 1e3, getMax() / 1e3);
+    }
+
+    /**
+     * Returns the bucket a value is counted in.
+     */
+    private static int bucket(long value) {
+        if (value < SUB_COUNT) {
+            return (int) value;
+        }
+        //value >>> shift keeps the top SUB_BITS + 1 bits, from 32 to 63
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BITS;
+        return (shift + 1) * SUB_COUNT + (int) ((value >>> shift) - SUB_COUNT);
+    }
+
+    /**
+     * Returns the largest value that is counted in a bucket.
+     */
+    private static long highestValue(int bucket) {
+        if (bucket < SUB_COUNT) {
+            return bucket;
+        }
+        int shift = bucket / SUB_COUNT - 1;
+        long sub = bucket % SUB_COUNT + SUB_COUNT;
+        return ((sub + 1) << shift) - 1;
+    }
+}
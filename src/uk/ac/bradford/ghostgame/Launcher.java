@@ -1,33 +1,363 @@
 package uk.ac.bradford.ghostgame;
 
 import java.awt.EventQueue;
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
 
 /**
  * This class is the entry point for the project, containing the main method that
  * starts a game. It creates instances of the different classes of this project
  * and connects them appropriately.
+ *
+ * Passing the argument --headless followed by a number of turns runs a game
+ * without any display, with the player making random moves, and prints how
+ * many turns per second the engine processed. An optional random seed can
+ * follow the number of turns to replay the same game, e.g.
+ * java uk.ac.bradford.ghostgame.Launcher --headless 1000000 42
+ *
+ * Passing --batch followed by a number of games, a turn limit and a first
+ * seed (all optional) plays that many headless games in parallel on all
+ * processor cores with a ChasePolicy player and prints the combined results,
+ * e.g.
+ * java uk.ac.bradford.ghostgame.Launcher --batch 10000 500 1
+ *
+ * Passing --mcts followed by a number of turns, a search time per turn in
+ * milliseconds and a seed (all optional) plays one headless game with an
+ * MctsPolicy player searching on all processor cores, and prints its
+ * progress and how many playouts per second the search ran, e.g.
+ * java uk.ac.bradford.ghostgame.Launcher --mcts 500 20 1
+ *
+ * Passing --world followed by a world size, a number of turns and a seed
+ * (all optional) plays one headless game with random moves on a world of
+ * that width and height, by default 100000 tiles, generated a chunk at a
+ * time (see GameEngine.startWorld), and prints how far the player got and
+ * how many chunks were generated and are held in memory at the end, e.g.
+ * java uk.ac.bradford.ghostgame.Launcher --world 100000 1000000 1
+ *
+ * Passing --record followed by a file name plays a normal game on screen and
+ * records it to that file. Passing --replay followed by one or more recorded
+ * files plays them back without a display and prints how each game ended.
+ *
+ * Passing --realtime followed by a number of turns per second (optional,
+ * 20 by default) plays on screen in real time: turns are played at that
+ * rate whether or not keys are pressed, and the window is drawn with active
+ * rendering at REALTIME_FPS frames per second, with the frame rate and frame
+ * time jitter shown in its title. --record and --realtime can be given
+ * together, in either order, to record a real-time game, e.g.
+ * java uk.ac.bradford.ghostgame.Launcher --metrics 5 --realtime 20 --record game.rep
+ *
+ * Any of these can be preceded by --metrics and a number of seconds to
+ * record how long turns and repaints take and print a summary at that
+ * interval and when a headless run finishes, e.g.
+ * java uk.ac.bradford.ghostgame.Launcher --metrics 5 --headless
+ *
+ * Any of these apart from --replay can also be preceded by --size and a
+ * level size in tiles, written as the width, an x and the height, to play
+ * on levels of that size instead of the default, e.g.
+ * java uk.ac.bradford.ghostgame.Launcher --size 512x512 --headless
+ *
+ * Similarly --activity and a number of tiles sets how far from the player
+ * ghosts stay awake with --headless, --mcts and --world (recorded games always use
+ * the default, so they can be replayed), e.g.
+ * java uk.ac.bradford.ghostgame.Launcher --size 4096x4096 --activity 32 --headless
  * @author prtrundl
  */
 public class Launcher {
     
-    public static void main(String[] args) {
+    /**
+     * The number of turns played by --headless when no number is given.
+     */
+    private static final int DEFAULT_HEADLESS_TURNS = 1000000;
+    
+    /**
+     * The number of games, turn limit and energy sample interval used by
+     * --batch when they are not given.
+     */
+    private static final int DEFAULT_BATCH_GAMES = 1000;
+    private static final int DEFAULT_BATCH_TURNS = 1000;
+    private static final int BATCH_SAMPLE_INTERVAL = 50;
+    
+    /**
+     * The number of turns, search time per turn in milliseconds and playout
+     * depth used by --mcts, and how often it prints its progress.
+     */
+    private static final int DEFAULT_MCTS_TURNS = 500;
+    private static final int DEFAULT_MCTS_BUDGET = 20;
+    private static final int MCTS_DEPTH = 12;
+    private static final int MCTS_REPORT_INTERVAL = 100;
+    
+    /**
+     * The world size and number of turns used by --world when they are not
+     * given.
+     */
+    private static final int DEFAULT_WORLD_SIZE = 100000;
+    private static final int DEFAULT_WORLD_TURNS = 1000000;
+    
+    /**
+     * The turns per second played by --realtime when no number is given, and
+     * the frames drawn per second.
+     */
+    private static final int DEFAULT_REALTIME_TICKS = 20;
+    private static final int REALTIME_FPS = 60;
+    
+    /**
+     * How long the program waits on exit for a recorded game to be written.
+     */
+    private static final int RECORDING_CLOSE_MILLIS = 1000;
+    
+    /**
+     * The level size set with --size.
+     */
+    private static int levelWidth = GameEngine.LEVEL_WIDTH;
+    private static int levelHeight = GameEngine.LEVEL_HEIGHT;
+    
+    /**
+     * The activity distance set with --activity.
+     */
+    private static int activityDistance = GameEngine.DEFAULT_ACTIVITY_DISTANCE;
+    
+    public static void main(String[] args) throws IOException {
+        File recordFile = null;
+        int realtimeTicks = 0;
+        while (args.length > 0) {
+            int used = 2;
+            if (args[0].equals("--realtime")) {
+                //the number of turns per second can be left out
+                if (args.length > 1 && args[1].matches("\\d+")) {
+                    realtimeTicks = Integer.parseInt(args[1]);
+                } else {
+                    realtimeTicks = DEFAULT_REALTIME_TICKS;
+                    used = 1;
+                }
+            } else if (args.length < 2) {
+                break;
+            } else if (args[0].equals("--metrics")) {
+                GameMetrics.startPeriodicDump(System.out, Long.parseLong(args[1]) * 1000);
+            } else if (args[0].equals("--activity")) {
+                activityDistance = Integer.parseInt(args[1]);
+            } else if (args[0].equals("--size")) {
+                String[] size = args[1].split("x");
+                levelWidth = Integer.parseInt(size[0]);
+                levelHeight = Integer.parseInt(size[size.length - 1]);
+            } else if (args[0].equals("--record")) {
+                recordFile = new File(args[1]);
+            } else {
+                break;
+            }
+            args = Arrays.copyOfRange(args, used, args.length);
+        }
+        if (args.length > 0 && args[0].equals("--headless")) {
+            int turns = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_HEADLESS_TURNS;
+            long seed = args.length > 2 ? Long.parseLong(args[2]) : GameRandom.randomSeed();
+            runHeadless(turns, seed);
+            dumpMetrics();
+            return;
+        }
+        if (args.length > 0 && args[0].equals("--batch")) {
+            int games = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_BATCH_GAMES;
+            int turns = args.length > 2 ? Integer.parseInt(args[2]) : DEFAULT_BATCH_TURNS;
+            long seed = args.length > 3 ? Long.parseLong(args[3]) : GameRandom.randomSeed();
+            runBatch(games, turns, seed);
+            dumpMetrics();
+            return;
+        }
+        if (args.length > 0 && args[0].equals("--mcts")) {
+            int turns = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_MCTS_TURNS;
+            int budget = args.length > 2 ? Integer.parseInt(args[2]) : DEFAULT_MCTS_BUDGET;
+            long seed = args.length > 3 ? Long.parseLong(args[3]) : GameRandom.randomSeed();
+            runMcts(turns, budget, seed);
+            dumpMetrics();
+            return;
+        }
+        if (args.length > 0 && args[0].equals("--world")) {
+            int size = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_WORLD_SIZE;
+            int turns = args.length > 2 ? Integer.parseInt(args[2]) : DEFAULT_WORLD_TURNS;
+            long seed = args.length > 3 ? Long.parseLong(args[3]) : GameRandom.randomSeed();
+            runWorld(size, turns, seed);
+            dumpMetrics();
+            return;
+        }
+        if (args.length > 0 && args[0].equals("--replay")) {
+            for (int i = 1; i < args.length; i++) {
+                runReplay(new File(args[i]));
+            }
+            dumpMetrics();
+            return;
+        }
+        final long seed = GameRandom.randomSeed();
+        final ReplayRecorder recorder = recordFile != null
+                ? new ReplayRecorder(recordFile, seed, levelWidth, levelHeight) : null;
+        final int ticks = realtimeTicks;
         EventQueue.invokeLater(new Runnable() {
         
             /**
-             * The run method starts the game in a separate thread. It creates
-             * the GUI, the engine and the input handler classes and connects
-             * those that call other objects.
+             * The run method creates the GUI, the engine, the engine thread and
+             * the input handler classes and connects those that call other
+             * objects. The game itself is started and played on the engine
+             * thread.
              */
             @Override
             public void run() {
-                GameGUI gui = new GameGUI();            //create GUI
+                GameGUI gui = new GameGUI(ticks);       //create GUI
                 gui.setVisible(true);                   //display GUI
-                GameEngine eng = new GameEngine(gui);   //create engine
-                GameInputHandler i = new GameInputHandler(eng);   //create input handler
+                if (ticks > 0) {
+                    gui.startActiveRendering(REALTIME_FPS); //draw frames on a thread of their own
+                }
+                GameEngine eng = new GameEngine(gui, seed, levelWidth, levelHeight);   //create engine
+                eng.setLevelPrefetch(true);             //build levels in the background
+                final EngineThread t = new EngineThread(eng, recorder, ticks);   //create engine thread
+                GameInputHandler i = new GameInputHandler(t);   //create input handler
                 gui.registerKeyHandler(i);              //registers handler with GUI
-                eng.startGame();                        //starts the game
+                if (recorder != null) {
+                    //closing the window exits the program, so stop the engine
+                    //thread first to let it write the end of the recording
+                    Runtime.getRuntime().addShutdownHook(new Thread("ghostgame-replay-close") {
+                        @Override
+                        public void run() {
+                            t.interrupt();
+                            try {
+                                t.join(RECORDING_CLOSE_MILLIS);
+                            } catch (InterruptedException e) {
+                                //give up waiting, the program is exiting anyway
+                            }
+                        }
+                    });
+                }
+                t.start();                              //starts the game
             }
         });
     }
     
+    /**
+     * Prints the final metrics summary if --metrics was given.
+     */
+    private static void dumpMetrics() {
+        if (GameMetrics.isEnabled()) {
+            GameMetrics.dump(System.out);
+        }
+    }
+    
+    /**
+     * Plays a game without a GUI. Every turn the player moves in a random
+     * direction (or not at all) exactly as if an arrow key had been pressed,
+     * then the engine processes the turn. The same seed always plays the same
+     * game.
+     * @param turns the number of turns to play
+     * @param seed the random seed for both the engine and the player's moves
+     */
+    private static void runHeadless(int turns, long seed) {
+        GameEngine eng = new GameEngine(seed, levelWidth, levelHeight);  //headless engine, no GUI
+        eng.setActivityDistance(activityDistance);
+        GameRandom moves = new GameRandom(seed).split();
+        Command[] commands = Command.values();
+        eng.startGame();
+        long start = System.nanoTime();
+        for (int t = 0; t < turns; t++) {
+            eng.playTurn(commands[moves.nextInt(commands.length)]);
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("seed %d: %d turns in %.3f s (%.0f turns/s), reached level %d%n",
+                seed, turns, seconds, turns / seconds, eng.getLevelNumber());
+    }
+    
+    /**
+     * Plays a batch of headless games on all processor cores and prints the
+     * combined results.
+     * @param games the number of games to play
+     * @param turns the turn limit for each game
+     * @param seed the seed of the first game
+     */
+    private static void runBatch(int games, int turns, long seed) {
+        int cores = Runtime.getRuntime().availableProcessors();
+        BatchSimulator sim = new BatchSimulator(new ChasePolicy(), turns, BATCH_SAMPLE_INTERVAL,
+                levelWidth, levelHeight);
+        long start = System.nanoTime();
+        BatchResult result = sim.run(seed, games, cores);
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("first seed %d, %d cores: %.3f s (%.0f turns/s)%n",
+                seed, cores, seconds, result.getTotalTurns() / seconds);
+        result.print(System.out);
+    }
+    
+    /**
+     * Plays one headless game with the Monte Carlo tree search player and
+     * prints its progress. The game stops early if the player runs out of
+     * energy.
+     * @param turns the number of turns to play
+     * @param budget the search time for every turn in milliseconds
+     * @param seed the random seed for the engine and the search
+     */
+    private static void runMcts(int turns, int budget, long seed) {
+        int cores = Runtime.getRuntime().availableProcessors();
+        GameEngine eng = new GameEngine(seed, levelWidth, levelHeight);
+        eng.setActivityDistance(activityDistance);
+        GameRandom rng = new GameRandom(seed).split();
+        MctsPolicy bot = new MctsPolicy(cores, budget, MCTS_DEPTH);
+        try {
+            eng.startGame();
+            for (int t = 1; t <= turns && eng.getPlayer().getEnergy() > 0; t++) {
+                eng.playTurn(bot.nextCommand(eng, rng));
+                if (t % MCTS_REPORT_INTERVAL == 0) {
+                    System.out.printf("turn %d: level %d, captured %d, energy %d, %.0f playouts/s%n",
+                            t, eng.getLevelNumber(), eng.getGhostsCaptured(),
+                            eng.getPlayer().getEnergy(), bot.getPlayoutsPerSecond());
+                }
+            }
+        } finally {
+            bot.close();
+        }
+        System.out.printf("seed %d, %d cores, %d ms per turn: level %d, captured %d, energy %d, %d playouts (%.0f playouts/s)%n",
+                seed, cores, budget, eng.getLevelNumber(), eng.getGhostsCaptured(),
+                eng.getPlayer().getEnergy(), bot.getPlayouts(), bot.getPlayoutsPerSecond());
+    }
+    
+    /**
+     * Plays a headless game on a square world with the player making random
+     * moves, and prints how far the player got and how much of the world had
+     * to be generated and kept.
+     * @param size the width and height of the world in tiles
+     * @param turns the number of turns to play
+     * @param seed the random seed for the world and the player's moves
+     */
+    private static void runWorld(int size, int turns, long seed) {
+        GameEngine eng = new GameEngine(seed);
+        eng.setActivityDistance(activityDistance);
+        GameRandom moves = new GameRandom(seed).split();
+        Command[] commands = Command.values();
+        eng.startWorld(size, size);
+        long start = System.nanoTime();
+        for (int t = 0; t < turns; t++) {
+            eng.playTurn(commands[moves.nextInt(commands.length)]);
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        LevelWindow window = eng.getWindow();
+        ChunkedLevel world = window.getWorld();
+        int tiles = ChunkedLevel.CHUNK_SIZE * ChunkedLevel.CHUNK_SIZE;
+        System.out.printf("seed %d, %dx%d tiles: %d turns in %.3f s (%.0f turns/s), player at %d,%d%n",
+                seed, size, size, turns, seconds, turns / seconds,
+                eng.getWindowX() + eng.getPlayer().getX(), eng.getWindowY() + eng.getPlayer().getY());
+        System.out.printf("window moved %d times, captured %d, energy %d, ghosts in window %d, parked %d%n",
+                window.getMoves(), eng.getGhostsCaptured(), eng.getPlayer().getEnergy(),
+                eng.getGhosts().liveCount(), window.getParkedGhosts());
+        System.out.printf("chunks generated %d, dropped %d, held %d, changed %d (%d KB of tiles)%n",
+                world.getChunksGenerated(), world.getChunksDropped(), world.getChunksHeld(),
+                world.getChunksChanged(), (long) world.getChunksHeld() * tiles / 1024);
+    }
+    
+    /**
+     * Plays back a recorded game without a display and prints how it ended.
+     * @param file the replay file to play
+     * @throws IOException if the file cannot be read
+     */
+    private static void runReplay(File file) throws IOException {
+        long start = System.nanoTime();
+        GameEngine eng = ReplayPlayer.replay(file);
+        double seconds = (System.nanoTime() - start) / 1e9;
+        Player p = eng.getPlayer();
+        System.out.printf("%s: seed %d, turn %d, level %d, captured %d, player at %d,%d energy %d (%.3f s)%n",
+                file, eng.getSeed(), eng.getTurnNumber(), eng.getLevelNumber(), eng.getGhostsCaptured(),
+                p.getX(), p.getY(), p.getEnergy(), seconds);
+    }
+    
 }
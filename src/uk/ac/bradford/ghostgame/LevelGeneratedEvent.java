@@ -0,0 +1,30 @@
+package uk.ac.bradford.ghostgame;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * A JDK Flight Recorder event for building a PreparedLevel. Its duration is
+ * the generation time. It is recorded on whichever thread built the level,
+ * which is the level prefetcher's thread when prefetching is on.
+ */
+@Name("uk.ac.bradford.ghostgame.LevelGenerated")
+@Label("Level Generated")
+@Category("Ghost Game")
+@Description("Generating the tiles, ghosts and spawn positions of a level")
+final class LevelGeneratedEvent extends jdk.jfr.Event {
+
+    @Label("Level Number")
+    int levelNumber;
+
+    @Label("Width")
+    int width;
+
+    @Label("Height")
+    int height;
+
+    @Label("Ghost Count")
+    int ghostCount;
+}
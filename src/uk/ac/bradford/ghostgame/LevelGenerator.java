@@ -0,0 +1,265 @@
+package uk.ac.bradford.ghostgame;
+
+import java.util.Arrays;
+import uk.ac.bradford.ghostgame.GameEngine.TileType;
+
+/**
+ * Generates random levels of any size. The same random number generator state
+ * always produces the same level.
+ *
+ * Levels are built by recursive division (a binary space partition): the
+ * level starts as one open room inside a border of walls, and rooms are
+ * repeatedly split in two by a straight wall with a single door in it until
+ * they are small enough. Walls are only ever placed on even co-ordinates and
+ * doors on odd ones, so a later wall can never be built across an earlier
+ * door and every floor tile can be reached from every other. One room gets
+ * the bank, placed away from the room's walls, and breaches are scattered in
+ * open floor where they cannot block a passage.
+ *
+ * Tiles are written straight into a byte array which is then wrapped in a
+ * LevelGrid, so the work done is proportional to the size of the level.
+ */
+final class LevelGenerator {
+
+    private static final byte WALL = (byte) TileType.WALL.ordinal();
+    private static final byte FLOOR1 = (byte) TileType.FLOOR1.ordinal();
+    private static final byte DOOR = (byte) TileType.DOOR.ordinal();
+    private static final byte BANK = (byte) TileType.BANK.ordinal();
+    private static final byte BREACH = (byte) TileType.BREACH.ordinal();
+
+    /**
+     * The smallest width or height of a room, in floor tiles.
+     */
+    private static final int MIN_ROOM = 3;
+
+    /**
+     * Rooms with more floor tiles than this are always split.
+     */
+    private static final int MAX_ROOM_AREA = 150;
+
+    /**
+     * Rooms small enough to keep are kept with a chance of one in this many,
+     * and split otherwise.
+     */
+    private static final int KEEP_ROOM_ODDS = 2;
+
+    /**
+     * The number of random tiles tried for every breach before giving up.
+     */
+    private static final int BREACH_ATTEMPTS = 50;
+
+    /**
+     * This class only has static methods.
+     */
+    private LevelGenerator() {
+    }
+
+    /**
+     * Generates a level.
+     *
+     * @param rng The generator for every random choice
+     * @param width The width of the level in tiles, at least 3
+     * @param height The height of the level in tiles, at least 3
+     * @param breaches The number of breaches to add. Fewer are added if the
+     * level does not have room for them.
+     * @return the new level
+     */
+    static LevelGrid generate(GameRandom rng, int width, int height, int breaches) {
+        byte[] t = new byte[width * height];
+        Arrays.fill(t, FLOOR1);
+        for (int x = 0; x < width; x++) {
+            t[x] = WALL;
+            t[(height - 1) * width + x] = WALL;
+        }
+        for (int y = 0; y < height; y++) {
+            t[y * width] = WALL;
+            t[y * width + width - 1] = WALL;
+        }
+        t[divide(rng, t, width, 1, 1, width - 2, height - 2)] = BANK;
+        addBreaches(rng, t, width, height, breaches);
+        return new LevelGrid(width, height, t);
+    }
+
+    /**
+     * Generates one chunk of a ChunkedLevel: a square of tiles with a wall
+     * along its left column and top row, each with one door unless it is the
+     * edge of the level, and an area of floor inside them divided into rooms
+     * in the same way as generate. The wall along the right and bottom of the
+     * chunk is the left column and top row of the chunks next to it. A door
+     * is always on an odd co-ordinate, where the chunk next to it never has
+     * a wall, so every chunk can be reached from every other.
+     *
+     * @param rng The generator for every random choice in the chunk
+     * @param size The width and height of the chunk, an even number
+     * @param originX The X co-ordinate in the level of the chunk's left column
+     * @param originY The Y co-ordinate in the level of the chunk's top row
+     * @param width The width of the whole level; tiles outside it are walls,
+     * as is the last column of the level
+     * @param height The height of the whole level; tiles outside it are walls,
+     * as is the last row of the level
+     * @param bank true to place a bank in one of the chunk's rooms
+     * @param breaches The number of breaches to add, if there is room
+     * @return the tile codes of the chunk, row by row
+     */
+    static byte[] generateChunk(GameRandom rng, int size, int originX, int originY,
+            int width, int height, boolean bank, int breaches) {
+        byte[] t = new byte[size * size];
+        Arrays.fill(t, WALL);
+        //the last floor column and row of the chunk, in chunk co-ordinates
+        int x1 = Math.min(size - 1, width - 2 - originX);
+        int y1 = Math.min(size - 1, height - 2 - originY);
+        if (x1 < 1 || y1 < 1) {
+            return t;
+        }
+        for (int y = 1; y <= y1; y++) {
+            Arrays.fill(t, y * size + 1, y * size + x1 + 1, FLOOR1);
+        }
+        if (originX > 0) {
+            t[randomOdd(rng, 1, y1) * size] = DOOR;
+        }
+        if (originY > 0) {
+            t[randomOdd(rng, 1, x1)] = DOOR;
+        }
+        int bankTile = divide(rng, t, size, 1, 1, x1, y1);
+        if (bank && x1 >= 3 && y1 >= 3) {
+            t[bankTile] = BANK;
+        }
+        //breaches stay off the last column and row, which border the next chunk
+        addBreaches(rng, t, size, Math.min(size, y1 + 2), breaches);
+        return t;
+    }
+
+    /**
+     * Divides an area of floor into rooms, starting from one room covering
+     * the whole area.
+     *
+     * @param rng The generator for every random choice
+     * @param t The tile codes, row by row
+     * @param width The number of tiles in a row of t
+     * @param left The first floor column of the area; must be odd
+     * @param top The first floor row of the area; must be odd
+     * @param right The last floor column of the area
+     * @param bottom The last floor row of the area
+     * @return the index in t of a good tile for the bank, away from the walls
+     * of one of the rooms
+     */
+    private static int divide(GameRandom rng, byte[] t, int width, int left, int top, int right, int bottom) {
+        //rooms still to be processed, four ints each: x0, y0, x1, y1 of the floor
+        int[] stack = new int[64];
+        int sp = 0;
+        push(stack, sp, left, top, right, bottom);
+        sp += 4;
+        int rooms = 0;
+        int bankX = (left + right + 1) / 2;
+        int bankY = (top + bottom + 1) / 2;
+        while (sp > 0) {
+            int y1 = stack[--sp];
+            int x1 = stack[--sp];
+            int y0 = stack[--sp];
+            int x0 = stack[--sp];
+            int rw = x1 - x0 + 1;
+            int rh = y1 - y0 + 1;
+            boolean canSplitX = firstEven(x0 + MIN_ROOM) <= x1 - MIN_ROOM;
+            boolean canSplitY = firstEven(y0 + MIN_ROOM) <= y1 - MIN_ROOM;
+            if (!(canSplitX || canSplitY)
+                    || (rw * rh <= MAX_ROOM_AREA && rng.nextInt(KEEP_ROOM_ODDS) == 0)) {
+                //a finished room: choose it for the bank with probability 1/rooms
+                rooms++;
+                if (rw >= 3 && rh >= 3 && rng.nextInt(rooms) == 0) {
+                    bankX = x0 + 1 + rng.nextInt(rw - 2);
+                    bankY = y0 + 1 + rng.nextInt(rh - 2);
+                }
+                continue;
+            }
+            if (sp + 8 > stack.length) {
+                stack = Arrays.copyOf(stack, stack.length * 2);
+            }
+            boolean splitX = canSplitX && (!canSplitY || rw > rh || (rw == rh && rng.nextBoolean()));
+            if (splitX) {
+                int wx = randomEven(rng, x0 + MIN_ROOM, x1 - MIN_ROOM);
+                for (int y = y0; y <= y1; y++) {
+                    t[y * width + wx] = WALL;
+                }
+                t[randomOdd(rng, y0, y1) * width + wx] = DOOR;
+                push(stack, sp, x0, y0, wx - 1, y1);
+                push(stack, sp + 4, wx + 1, y0, x1, y1);
+            } else {
+                int wy = randomEven(rng, y0 + MIN_ROOM, y1 - MIN_ROOM);
+                for (int x = x0; x <= x1; x++) {
+                    t[wy * width + x] = WALL;
+                }
+                t[wy * width + randomOdd(rng, x0, x1)] = DOOR;
+                push(stack, sp, x0, y0, x1, wy - 1);
+                push(stack, sp + 4, x0, wy + 1, x1, y1);
+            }
+            sp += 8;
+        }
+        return bankY * width + bankX;
+    }
+
+    /**
+     * Scatters breaches over open floor, trying random tiles away from the
+     * edges of the area until enough are placed or too many tries fail.
+     *
+     * @param rng The generator for every random choice
+     * @param t The tile codes, row by row
+     * @param width The number of tiles in a row of t
+     * @param height The number of rows of t to use
+     * @param breaches The number of breaches to add
+     */
+    private static void addBreaches(GameRandom rng, byte[] t, int width, int height, int breaches) {
+        for (int attempts = breaches * BREACH_ATTEMPTS; breaches > 0 && attempts > 0; attempts--) {
+            int x = 1 + rng.nextInt(width - 2);
+            int y = 1 + rng.nextInt(height - 2);
+            if (openAround(t, width, x, y)) {
+                t[y * width + x] = BREACH;
+                breaches--;
+            }
+        }
+    }
+
+    private static void push(int[] stack, int sp, int x0, int y0, int x1, int y1) {
+        stack[sp] = x0;
+        stack[sp + 1] = y0;
+        stack[sp + 2] = x1;
+        stack[sp + 3] = y1;
+    }
+
+    private static int firstEven(int lo) {
+        return lo + (lo & 1);
+    }
+
+    /**
+     * Returns a random even number between lo and hi inclusive. There must be
+     * at least one.
+     */
+    private static int randomEven(GameRandom rng, int lo, int hi) {
+        int first = firstEven(lo);
+        return first + 2 * rng.nextInt((hi - first) / 2 + 1);
+    }
+
+    /**
+     * Returns a random odd number between lo and hi inclusive. Rooms always
+     * start on an odd co-ordinate so there is at least one.
+     */
+    private static int randomOdd(GameRandom rng, int lo, int hi) {
+        int first = lo | 1;
+        return first + 2 * rng.nextInt((hi - first) / 2 + 1);
+    }
+
+    /**
+     * Checks whether a tile and all eight tiles around it are plain floor. A
+     * breach placed on such a tile never blocks a door or closes off part of
+     * a room, because the player can always walk around it.
+     */
+    private static boolean openAround(byte[] t, int width, int x, int y) {
+        for (int dy = -1; dy <= 1; dy++) {
+            for (int dx = -1; dx <= 1; dx++) {
+                if (t[(y + dy) * width + x + dx] != FLOOR1) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+}
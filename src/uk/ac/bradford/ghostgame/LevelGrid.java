@@ -0,0 +1,360 @@
+package uk.ac.bradford.ghostgame;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import uk.ac.bradford.ghostgame.GameEngine.TileType;
+
+/**
+ * The LevelGrid class stores the tiles of a level in a compact form. Each tile
+ * is one byte (the ordinal of its TileType) in a flat array laid out row by
+ * row, so the tile at X,Y is stored at index y * width + x. Alongside the
+ * tiles the grid keeps bitsets with one bit per tile recording which tiles the
+ * player can walk into, which tiles ghosts can move into and which tiles are
+ * doors, so movement checks are a single bit test instead of comparisons
+ * against several TileType values.
+ *
+ * The co-ordinate system is the same as for Entity objects: 0,0 is the top
+ * left tile in the level.
+ */
+public final class LevelGrid {
+
+    /**
+     * All TileType values, indexed by ordinal. Used to turn a stored byte back
+     * into a TileType without calling TileType.values() (which copies the
+     * array every time).
+     */
+    private static final TileType[] TYPES = TileType.values();
+
+    /**
+     * The width of the level, measured in tiles.
+     */
+    private final int width;
+
+    /**
+     * The height of the level, measured in tiles.
+     */
+    private final int height;
+
+    /**
+     * The ordinal of the TileType of every tile, row by row.
+     */
+    private final byte[] tiles;
+
+    /**
+     * Bit set for every tile the player can move into: anything except walls
+     * and breaches.
+     */
+    private final long[] playerOpen;
+
+    /**
+     * Bit set for every tile a ghost can move into: anything except walls.
+     */
+    private final long[] ghostOpen;
+
+    /**
+     * Bit set for every door tile. Ghosts avoid doors when the player is
+     * close by.
+     */
+    private final long[] doors;
+
+    /**
+     * Increased every time a tile is changed, so that a copy of the grid can
+     * tell whether it is still up to date.
+     */
+    private int modCount;
+
+    /**
+     * The Zobrist hash of the tiles: the XOR of the keys of every tile, kept
+     * up to date by set.
+     */
+    private long hash;
+
+    /**
+     * Creates a level of the given size with every tile set to FLOOR1.
+     *
+     * @param width The width of the level in tiles
+     * @param height The height of the level in tiles
+     */
+    public LevelGrid(int width, int height) {
+        this.width = width;
+        this.height = height;
+        int size = width * height;
+        tiles = new byte[size];
+        playerOpen = new long[(size + 63) >>> 6];
+        ghostOpen = new long[playerOpen.length];
+        doors = new long[playerOpen.length];
+        Arrays.fill(tiles, (byte) TileType.FLOOR1.ordinal());    //hash 0
+        fill(TileType.FLOOR1);
+    }
+
+    /**
+     * Creates a level from an array of tile codes, as built by the
+     * LevelGenerator. The array is used directly, not copied, and the
+     * passability bits are worked out in one pass over it.
+     *
+     * @param width The width of the level in tiles
+     * @param height The height of the level in tiles
+     * @param tiles The ordinal of the TileType of every tile, row by row
+     */
+    LevelGrid(int width, int height, byte[] tiles) {
+        this.width = width;
+        this.height = height;
+        this.tiles = tiles;
+        playerOpen = new long[(tiles.length + 63) >>> 6];
+        ghostOpen = new long[playerOpen.length];
+        doors = new long[playerOpen.length];
+        int wall = TileType.WALL.ordinal();
+        int breach = TileType.BREACH.ordinal();
+        int door = TileType.DOOR.ordinal();
+        long h = 0;
+        for (int word = 0; word < playerOpen.length; word++) {
+            long player = 0;
+            long ghost = 0;
+            long doorBits = 0;
+            int end = Math.min(tiles.length, (word + 1) << 6);
+            for (int i = word << 6; i < end; i++) {
+                int code = tiles[i];
+                long bit = 1L << i;
+                h ^= Zobrist.tile(i, code);
+                if (code != wall) {
+                    ghost |= bit;
+                    if (code != breach) {
+                        player |= bit;
+                    }
+                    if (code == door) {
+                        doorBits |= bit;
+                    }
+                }
+            }
+            playerOpen[word] = player;
+            ghostOpen[word] = ghost;
+            doors[word] = doorBits;
+        }
+        hash = h;
+    }
+
+    /**
+     * Creates a copy of another level. The copy does not change when the
+     * original changes.
+     *
+     * @param other The LevelGrid to copy
+     */
+    public LevelGrid(LevelGrid other) {
+        width = other.width;
+        height = other.height;
+        tiles = other.tiles.clone();
+        playerOpen = other.playerOpen.clone();
+        ghostOpen = other.ghostOpen.clone();
+        doors = other.doors.clone();
+        modCount = other.modCount;
+        hash = other.hash;
+    }
+
+    /**
+     * Returns the number of tile changes made to this grid so far.
+     *
+     * @return a counter that changes whenever a tile changes
+     */
+    public int getModCount() {
+        return modCount;
+    }
+
+    /**
+     * Returns the Zobrist hash of the tiles. Two grids of the same size with
+     * the same tiles have the same hash.
+     *
+     * @return the hash of every tile in the grid
+     */
+    public long getHash() {
+        return hash;
+    }
+
+    /**
+     * Returns the width of the level.
+     *
+     * @return the width of the level in tiles
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * Returns the height of the level.
+     *
+     * @return the height of the level in tiles
+     */
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Returns the index of the tile at X,Y in the flat tile array.
+     *
+     * @param x The X co-ordinate of the tile
+     * @param y The Y co-ordinate of the tile
+     * @return y * width + x
+     */
+    public int index(int x, int y) {
+        return y * width + x;
+    }
+
+    /**
+     * Checks whether a position is inside the level.
+     *
+     * @param x The X co-ordinate to check
+     * @param y The Y co-ordinate to check
+     * @return true if X,Y is a tile of this level
+     */
+    public boolean inBounds(int x, int y) {
+        return x >= 0 && y >= 0 && x < width && y < height;
+    }
+
+    /**
+     * Returns the type of the tile at X,Y.
+     *
+     * @param x The X co-ordinate of the tile
+     * @param y The Y co-ordinate of the tile
+     * @return the TileType of the tile
+     */
+    public TileType get(int x, int y) {
+        return TYPES[tiles[y * width + x]];
+    }
+
+    /**
+     * Changes the type of the tile at X,Y and updates the passability bits
+     * and the hash for it.
+     *
+     * @param x The X co-ordinate of the tile
+     * @param y The Y co-ordinate of the tile
+     * @param type The new TileType of the tile
+     */
+    public void set(int x, int y, TileType type) {
+        int i = y * width + x;
+        hash ^= Zobrist.tile(i, tiles[i]) ^ Zobrist.tile(i, type.ordinal());
+        tiles[i] = (byte) type.ordinal();
+        setBit(playerOpen, i, type != TileType.WALL && type != TileType.BREACH);
+        setBit(ghostOpen, i, type != TileType.WALL);
+        setBit(doors, i, type == TileType.DOOR);
+        modCount++;
+    }
+
+    /**
+     * Sets every tile in the level to the same type.
+     *
+     * @param type The TileType to fill the level with
+     */
+    public void fill(TileType type) {
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                set(x, y, type);
+            }
+        }
+    }
+
+    /**
+     * Checks whether the player can move into the tile at X,Y.
+     *
+     * @param x The X co-ordinate of the tile
+     * @param y The Y co-ordinate of the tile
+     * @return true unless the tile is a wall or a breach
+     */
+    public boolean isPlayerOpen(int x, int y) {
+        return getBit(playerOpen, y * width + x);
+    }
+
+    /**
+     * Checks whether a ghost can move into the tile at X,Y.
+     *
+     * @param x The X co-ordinate of the tile
+     * @param y The Y co-ordinate of the tile
+     * @return true unless the tile is a wall
+     */
+    public boolean isGhostOpen(int x, int y) {
+        return getBit(ghostOpen, y * width + x);
+    }
+
+    /**
+     * Checks whether the tile at X,Y is a door.
+     *
+     * @param x The X co-ordinate of the tile
+     * @param y The Y co-ordinate of the tile
+     * @return true if the tile is a door
+     */
+    public boolean isDoor(int x, int y) {
+        return getBit(doors, y * width + x);
+    }
+
+    /**
+     * Creates a 2D array of TileType values for this level, indexed as
+     * [x][y] like the arrays the game originally used. The array is a copy;
+     * changing it does not change the level.
+     *
+     * @return a new 2D array with the type of every tile
+     */
+    public TileType[][] toArray() {
+        TileType[][] t = new TileType[width][height];
+        for (int x = 0; x < width; x++) {
+            for (int y = 0; y < height; y++) {
+                t[x][y] = get(x, y);
+            }
+        }
+        return t;
+    }
+
+    /**
+     * Returns the number of bytes write puts in a buffer for this level.
+     *
+     * @return the size of the written level in bytes
+     */
+    int serializedSize() {
+        return 8 + tiles.length;
+    }
+
+    /**
+     * Writes the size and the tiles of this level to a buffer: the width and
+     * height as ints followed by one byte per tile. The passability bits are
+     * not written because they can be worked out from the tiles.
+     *
+     * @param out The buffer to write to
+     */
+    void write(ByteBuffer out) {
+        out.putInt(width);
+        out.putInt(height);
+        out.put(tiles);
+    }
+
+    /**
+     * Reads a level written by write.
+     *
+     * @param in The buffer to read from
+     * @return a new LevelGrid with the tiles read
+     * @throws IllegalArgumentException if the data is not a valid level
+     */
+    static LevelGrid read(ByteBuffer in) {
+        int w = in.getInt();
+        int h = in.getInt();
+        if (w <= 0 || h <= 0 || (long) w * h > in.remaining()) {
+            throw new IllegalArgumentException("Bad level size " + w + "x" + h);
+        }
+        byte[] t = new byte[w * h];
+        in.get(t);
+        for (byte code : t) {
+            if (code < 0 || code >= TYPES.length) {
+                throw new IllegalArgumentException("Bad tile code " + code);
+            }
+        }
+        return new LevelGrid(w, h, t);
+    }
+
+    private static boolean getBit(long[] bits, int i) {
+        return (bits[i >>> 6] & (1L << i)) != 0;
+    }
+
+    private static void setBit(long[] bits, int i, boolean value) {
+        if (value) {
+            bits[i >>> 6] |= 1L << i;
+        } else {
+            bits[i >>> 6] &= ~(1L << i);
+        }
+    }
+}
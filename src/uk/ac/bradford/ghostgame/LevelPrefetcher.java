@@ -0,0 +1,108 @@
+package uk.ac.bradford.ghostgame;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * The LevelPrefetcher builds the next level of a game on a background thread
+ * while the current level is being played, so that moving on to the next
+ * level does not have to wait for it to be generated.
+ *
+ * Only one level is built ahead at a time. The engine asks for level N+1 as
+ * soon as level N starts and takes it when level N is completed; if it is not
+ * finished by then, take waits for it. Because a PreparedLevel depends only on
+ * the seed and level number, a prefetched level is identical to one built
+ * when it is needed.
+ *
+ * All methods must be called from the thread that runs the engine.
+ */
+final class LevelPrefetcher {
+
+    private final ExecutorService executor;
+
+    /**
+     * The level being built, or null if none has been requested.
+     */
+    private Future<PreparedLevel> pending;
+
+    /**
+     * The level number of the pending level.
+     */
+    private int pendingNumber;
+
+    /**
+     * Creates a prefetcher with its own background thread. The thread is a
+     * daemon so that it does not keep the program running.
+     */
+    LevelPrefetcher() {
+        executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "ghostgame-prefetch");
+                t.setDaemon(true);
+                return t;
+            }
+        });
+    }
+
+    /**
+     * Starts building a level in the background, replacing any level that
+     * was requested before and not taken.
+     *
+     * @param seed The seed of the game
+     * @param number The level number to build
+     * @param width The width of the level in tiles
+     * @param height The height of the level in tiles
+     */
+    void request(final long seed, final int number, final int width, final int height) {
+        if (pending != null) {
+            pending.cancel(false);
+        }
+        pendingNumber = number;
+        pending = executor.submit(new Callable<PreparedLevel>() {
+            @Override
+            public PreparedLevel call() {
+                return new PreparedLevel(seed, number, width, height);
+            }
+        });
+    }
+
+    /**
+     * Returns a level requested earlier, waiting for it to finish if
+     * necessary.
+     *
+     * @param number The level number wanted
+     * @return the prepared level, or null if that level was not requested or
+     * could not be built, in which case the caller should build it itself
+     */
+    PreparedLevel take(int number) {
+        Future<PreparedLevel> f = pending;
+        pending = null;
+        if (f == null || pendingNumber != number) {
+            return null;
+        }
+        try {
+            return f.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();    //let the engine thread see it
+            return null;
+        } catch (ExecutionException e) {
+            System.out.println("Exception preparing level " + number + ": " + e.getCause());
+            e.getCause().printStackTrace(System.out);
+            return null;
+        }
+    }
+
+    /**
+     * Stops the background thread. Levels that have not been taken are
+     * thrown away.
+     */
+    void shutdown() {
+        pending = null;
+        executor.shutdownNow();
+    }
+}
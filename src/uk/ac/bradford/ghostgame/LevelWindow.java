@@ -0,0 +1,276 @@
+package uk.ac.bradford.ghostgame;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import uk.ac.bradford.ghostgame.GameEngine.TileType;
+
+/**
+ * A LevelWindow lets a GameEngine play on a ChunkedLevel, which can be far
+ * larger than the largest LevelGrid. The engine plays on a square LevelGrid
+ * of SIZE by SIZE tiles copied out of the chunked level around the player,
+ * and every co-ordinate the engine uses is a tile of that window. When the
+ * player comes within MARGIN tiles of an edge the engine moves the window so
+ * that the player is near its middle again: centre writes the tiles changed
+ * in the old window back to their chunks and copies out the new window, and
+ * carryGhosts moves the ghosts over to it. Ghosts left outside the new window
+ * are parked with the chunk they stand in, and come back when a window
+ * covers that chunk again.
+ *
+ * A chunk gets its ghosts the first time a window covers it, placed from the
+ * seed and the chunk's position. Memory use therefore depends only on where
+ * the player has been: the chunks held by the ChunkedLevel, the keys of the
+ * chunks that have had their ghosts and the ghosts parked outside the window.
+ */
+final class LevelWindow {
+
+    /**
+     * The width and height of the window in tiles, a multiple of the chunk
+     * size, and how close the player may come to one of its edges before the
+     * window moves.
+     */
+    static final int SIZE = 8 * ChunkedLevel.CHUNK_SIZE;
+    static final int MARGIN = SIZE / 4;
+
+    /**
+     * The number of unchanged chunks the ChunkedLevel keeps: enough for two
+     * windows, so moving the window only generates the chunks it has not
+     * covered recently.
+     */
+    static final int CACHED_CHUNKS = 2 * (SIZE / ChunkedLevel.CHUNK_SIZE) * (SIZE / ChunkedLevel.CHUNK_SIZE);
+
+    /**
+     * The number of ghosts placed in every chunk, and the number of random
+     * tiles tried for each before giving up.
+     */
+    private static final int GHOSTS_PER_CHUNK = 2;
+    private static final int GHOST_ATTEMPTS = 20;
+
+    /**
+     * The health of every ghost placed in a chunk.
+     */
+    private static final int GHOST_HEALTH = 100;
+
+    /**
+     * A parked ghost takes this many ints: its X and Y co-ordinates in the
+     * level, health, maximum health and delay.
+     */
+    private static final int PARKED_INTS = 5;
+
+    private final ChunkedLevel world;
+
+    /**
+     * Mixed with the key of a chunk to seed the placing of its ghosts.
+     */
+    private final long ghostSeed;
+
+    /**
+     * The co-ordinates in the level of the top left tile of the window,
+     * always the corner of a chunk.
+     */
+    private int originX;
+    private int originY;
+
+    /**
+     * Ghosts outside the window, by the key of the chunk they stand in,
+     * PARKED_INTS ints each.
+     */
+    private final Map<Long, int[]> parked = new HashMap<Long, int[]>();
+    private int parkedCount;
+
+    /**
+     * The keys of the chunks that have had their ghosts placed.
+     */
+    private final Set<Long> populated = new HashSet<Long>();
+
+    private int moves;
+
+    /**
+     * Creates a window onto a new ChunkedLevel. Call centre and then
+     * carryGhosts to place the first window.
+     *
+     * @param seed The seed of the game
+     * @param width The width of the level in tiles
+     * @param height The height of the level in tiles
+     */
+    LevelWindow(long seed, int width, int height) {
+        world = new ChunkedLevel(seed, 1, width, height, CACHED_CHUNKS);
+        ghostSeed = GameRandom.mix64(~seed);
+    }
+
+    /**
+     * Returns the level the window looks onto.
+     *
+     * @return the chunked level
+     */
+    ChunkedLevel getWorld() {
+        return world;
+    }
+
+    /**
+     * Returns the X co-ordinate in the level of the left column of the
+     * window. Adding it to an X co-ordinate in the window gives the X
+     * co-ordinate in the level.
+     *
+     * @return the level X co-ordinate of the window's left column
+     */
+    int getX() {
+        return originX;
+    }
+
+    /**
+     * Returns the Y co-ordinate in the level of the top row of the window.
+     *
+     * @return the level Y co-ordinate of the window's top row
+     */
+    int getY() {
+        return originY;
+    }
+
+    /**
+     * Returns the number of times the window has moved.
+     *
+     * @return the number of calls to centre after the first
+     */
+    int getMoves() {
+        return moves;
+    }
+
+    /**
+     * Returns the number of ghosts parked outside the window.
+     *
+     * @return the number of parked ghosts
+     */
+    int getParkedGhosts() {
+        return parkedCount;
+    }
+
+    /**
+     * Checks whether a tile of the window is so close to an edge that the
+     * window should move.
+     *
+     * @param x The X co-ordinate of the tile in the window
+     * @param y The Y co-ordinate of the tile in the window
+     * @return true if the tile is within MARGIN tiles of an edge
+     */
+    boolean isNearEdge(int x, int y) {
+        return x < MARGIN || y < MARGIN || x >= SIZE - MARGIN || y >= SIZE - MARGIN;
+    }
+
+    /**
+     * Moves the window so that a tile of the level is near its middle. The
+     * tiles changed in the old window are written back to the level first,
+     * so they are in the new window if it overlaps the old one.
+     *
+     * @param old The tiles of the old window, or null for the first window
+     * @param x The X co-ordinate in the level of the tile to centre on
+     * @param y The Y co-ordinate in the level of the tile to centre on
+     * @return the tiles of the new window
+     */
+    LevelGrid centre(LevelGrid old, int x, int y) {
+        if (old != null) {
+            world.putRegion(originX, originY, old);
+            moves++;
+        }
+        originX = (x - SIZE / 2) & -ChunkedLevel.CHUNK_SIZE;
+        originY = (y - SIZE / 2) & -ChunkedLevel.CHUNK_SIZE;
+        return world.region(originX, originY, SIZE, SIZE);
+    }
+
+    /**
+     * Builds the ghost store of the window after centre has moved it. The
+     * ghosts of the old window that are inside the new one keep their
+     * health, maximum health and delay and the others are parked. Then the
+     * ghosts parked in the chunks of the new window come back, and chunks
+     * that have never been covered by a window get their ghosts. Every ghost
+     * in the new store is awake and first acts one delay after the given
+     * time; the engine puts ghosts far from the player back to sleep when
+     * they come up.
+     *
+     * @param old The ghosts of the old window, or null for the first window
+     * @param oldX The level X co-ordinate of the old window's left column
+     * @param oldY The level Y co-ordinate of the old window's top row
+     * @param time The current time of the game clock
+     * @return the ghosts of the new window
+     */
+    GhostStore carryGhosts(GhostStore old, int oldX, int oldY, long time) {
+        GhostStore store = new GhostStore(SIZE, SIZE, old != null ? old.liveCount() : GHOSTS_PER_CHUNK);
+        if (old != null) {
+            for (int i = 0; i < old.liveCount(); i++) {
+                int slot = old.liveSlot(i);
+                put(store, oldX + old.getX(slot), oldY + old.getY(slot),
+                        old.getHealth(slot), old.getMaxHealth(slot), old.getDelay(slot), time);
+            }
+        }
+        for (int cy = Math.max(originY, 0); cy < originY + SIZE && cy < world.getHeight(); cy += ChunkedLevel.CHUNK_SIZE) {
+            for (int cx = Math.max(originX, 0); cx < originX + SIZE && cx < world.getWidth(); cx += ChunkedLevel.CHUNK_SIZE) {
+                Long key = ChunkedLevel.key(cx, cy);
+                int[] ghosts = parked.remove(key);
+                if (ghosts != null) {
+                    parkedCount -= ghosts.length / PARKED_INTS;
+                    for (int i = 0; i < ghosts.length; i += PARKED_INTS) {
+                        put(store, ghosts[i], ghosts[i + 1], ghosts[i + 2], ghosts[i + 3], ghosts[i + 4], time);
+                    }
+                }
+                if (populated.add(key)) {
+                    populate(store, cx, cy, time);
+                }
+            }
+        }
+        return store;
+    }
+
+    /**
+     * Places the ghosts of a chunk that no window has covered before. Each
+     * ghost goes on a random tile of the chunk that the player could walk
+     * into, apart from banks, and gets a random speed.
+     *
+     * @param store The ghost store of the window, which covers the chunk
+     * @param cx The X co-ordinate in the level of the chunk's left column
+     * @param cy The Y co-ordinate in the level of the chunk's top row
+     * @param time The current time of the game clock
+     */
+    private void populate(GhostStore store, int cx, int cy, long time) {
+        GameRandom rng = new GameRandom(GameRandom.mix64(ghostSeed ^ ChunkedLevel.key(cx, cy)));
+        for (int i = 0; i < GHOSTS_PER_CHUNK; i++) {
+            for (int attempt = 0; attempt < GHOST_ATTEMPTS; attempt++) {
+                int x = cx + rng.nextInt(ChunkedLevel.CHUNK_SIZE);
+                int y = cy + rng.nextInt(ChunkedLevel.CHUNK_SIZE);
+                if (world.inBounds(x, y) && world.isPlayerOpen(x, y) && world.get(x, y) != TileType.BANK) {
+                    put(store, x, y, GHOST_HEALTH, GHOST_HEALTH, PreparedLevel.ghostDelay(rng), time);
+                    break;
+                }
+            }
+        }
+    }
+
+    /**
+     * Adds a ghost to the window's store if it is inside the window, or
+     * parks it with its chunk if it is not.
+     *
+     * @param x The X co-ordinate of the ghost in the level
+     * @param y The Y co-ordinate of the ghost in the level
+     */
+    private void put(GhostStore store, int x, int y, int health, int maxHealth, int delay, long time) {
+        int wx = x - originX;
+        int wy = y - originY;
+        if (wx >= 0 && wy >= 0 && wx < SIZE && wy < SIZE) {
+            int slot = store.add(maxHealth, wx, wy, delay, time + delay);
+            store.changeHealth(slot, health - maxHealth);
+            return;
+        }
+        Long key = ChunkedLevel.key(x, y);
+        int[] ghosts = parked.get(key);
+        int n = ghosts == null ? 0 : ghosts.length;
+        ghosts = ghosts == null ? new int[PARKED_INTS] : Arrays.copyOf(ghosts, n + PARKED_INTS);
+        ghosts[n] = x;
+        ghosts[n + 1] = y;
+        ghosts[n + 2] = health;
+        ghosts[n + 3] = maxHealth;
+        ghosts[n + 4] = delay;
+        parked.put(key, ghosts);
+        parkedCount++;
+    }
+}
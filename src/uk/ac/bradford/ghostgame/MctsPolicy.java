@@ -0,0 +1,385 @@
+package uk.ac.bradford.ghostgame;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A PlayerPolicy that chooses every command by Monte Carlo tree search. For
+ * each turn it takes a snapshot of the game, then for a fixed time budget
+ * repeatedly restores the snapshot into a private headless engine, plays a
+ * sequence of commands chosen by the UCT rule followed by random commands,
+ * and scores how the game looks at the end. The command that was tried most
+ * often from the current state is played.
+ *
+ * The search is root parallel: every worker thread has its own engine, its
+ * own tree and its own random number generator split from the generator
+ * passed to nextCommand, and the visit counts of the trees are added
+ * together at the end. The only thing workers share while they search is a
+ * TranspositionTable: when a playout leaves the tree, the score of the
+ * random playout from that state is added to the table under the state's
+ * Zobrist hash, and once a state has been scored often enough any worker
+ * reaching it again uses the average instead of playing another random
+ * playout. Entries are keyed on the root state as well, since scores are
+ * measured from the root, so a table can be kept for a whole game, and on
+ * the number of turns the playout has left, since a state a few turns from
+ * the end of a playout scores differently from the same state reached early
+ * with many random turns still to play.
+ *
+ * The tree is open loop: a node stands for a sequence of commands rather than
+ * a game state, because ghosts move randomly and the same commands do not
+ * always lead to the same state. Every playout gives the engine a fresh
+ * random state so that different playouts see different ghost moves.
+ *
+ * Because the budget is measured in time, the number of playouts (and so the
+ * chosen command) depends on the speed of the machine; games played by this
+ * policy are not reproducible even with a fixed seed. The policy keeps
+ * worker threads and engines between calls, so it must only be used by one
+ * game at a time, and should be closed when it is no longer needed.
+ */
+public final class MctsPolicy implements PlayerPolicy, AutoCloseable {
+
+    private static final Command[] COMMANDS = Command.values();
+
+    /**
+     * The exploration constant of the UCT rule, in the same units as the
+     * scores returned by evaluate.
+     */
+    private static final double EXPLORATION = 0.5;
+
+    /**
+     * Scores for the things a playout can achieve, relative to each other.
+     */
+    private static final double LEVEL_SCORE = 10;
+    private static final double CAPTURE_SCORE = 3;
+    private static final double DAMAGE_SCORE = 2;
+    private static final double CARRY_SCORE = 2;
+    private static final double ENERGY_SCORE = 1;
+    private static final double DISTANCE_SCORE = 10;
+    private static final double OUT_OF_ENERGY_SCORE = -5;
+
+    /**
+     * The number of random playouts from a state after which the average in
+     * the transposition table is used instead of another playout.
+     */
+    private static final int TABLE_VISITS = 8;
+
+    /**
+     * The number of transposition table entries made by the constructor that
+     * does not take a table.
+     */
+    private static final int DEFAULT_TABLE_SIZE = 1 << 18;
+
+    private final int budgetMillis;
+    private final int depth;
+    private final ExecutorService executor;
+    private final Worker[] workers;
+    private final TranspositionTable table;
+
+    private final LongAdder playouts = new LongAdder();
+    private final LongAdder searchNanos = new LongAdder();
+
+    /**
+     * Creates a policy.
+     *
+     * @param threads The number of worker threads searching in parallel
+     * @param budgetMillis The time to search for every command, in
+     * milliseconds
+     * @param depth The number of turns every playout looks ahead
+     */
+    public MctsPolicy(int threads, int budgetMillis, int depth) {
+        this(threads, budgetMillis, depth, new TranspositionTable(DEFAULT_TABLE_SIZE));
+    }
+
+    /**
+     * Creates a policy that uses the given transposition table, which may be
+     * shared with other policies.
+     *
+     * @param threads The number of worker threads searching in parallel
+     * @param budgetMillis The time to search for every command, in
+     * milliseconds
+     * @param depth The number of turns every playout looks ahead
+     * @param table The table of scores of states already searched
+     */
+    public MctsPolicy(int threads, int budgetMillis, int depth, TranspositionTable table) {
+        this.budgetMillis = budgetMillis;
+        this.depth = depth;
+        this.table = table;
+        workers = new Worker[threads];
+        for (int i = 0; i < threads; i++) {
+            workers[i] = new Worker();
+        }
+        executor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+            private int count;
+
+            @Override
+            public synchronized Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "ghostgame-mcts-" + count++);
+                t.setDaemon(true);
+                return t;
+            }
+        });
+    }
+
+    /**
+     * Searches for the best command from the current state of a game. The
+     * game itself is only read, never changed.
+     *
+     * @param engine The engine playing the game
+     * @param rng The generator the worker generators are split from
+     * @return the command that was tried most often
+     */
+    @Override
+    public Command nextCommand(GameEngine engine, GameRandom rng) {
+        final byte[] root = engine.snapshot();
+        final long deadline = System.nanoTime() + budgetMillis * 1000000L;
+        List<Future<long[]>> results = new ArrayList<Future<long[]>>();
+        for (final Worker w : workers) {
+            final GameRandom workerRng = rng.split();
+            results.add(executor.submit(new Callable<long[]>() {
+                @Override
+                public long[] call() {
+                    return w.search(root, deadline, workerRng);
+                }
+            }));
+        }
+        long[] visits = new long[COMMANDS.length];
+        try {
+            for (Future<long[]> f : results) {
+                long[] v = f.get();
+                for (int i = 0; i < visits.length; i++) {
+                    visits[i] += v[i];
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return Command.WAIT;
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Search failed", e.getCause());
+        }
+        int best = Command.WAIT.ordinal();
+        for (int i = 0; i < visits.length; i++) {
+            if (visits[i] > visits[best]) {
+                best = i;
+            }
+        }
+        return COMMANDS[best];
+    }
+
+    /**
+     * Returns the number of playouts run since this policy was created.
+     *
+     * @return the total number of playouts over all workers
+     */
+    public long getPlayouts() {
+        return playouts.sum();
+    }
+
+    /**
+     * Returns the rate at which playouts were run, over all workers. Each
+     * playout restores a snapshot and plays up to depth turns, so this also
+     * measures how fast the engine runs.
+     *
+     * @return playouts per second of searching, or 0 if nothing was searched
+     */
+    public double getPlayoutsPerSecond() {
+        long nanos = searchNanos.sum();
+        //every worker searches for the same time, so wall time is the total
+        //divided by the number of workers
+        return nanos == 0 ? 0 : playouts.sum() * 1e9 * workers.length / nanos;
+    }
+
+    /**
+     * Stops the worker threads.
+     */
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Scores the state of a game at the end of a playout compared to the
+     * state the search started from. Completed levels and captured ghosts
+     * count most, then damage done to ghosts that are still free; otherwise
+     * a player carrying a ghost should be close to a bank and a player that
+     * is not should be close to a ghost.
+     */
+    private static double evaluate(GameEngine e, int rootLevel, int rootCaptured, double rootDamage) {
+        Player p = e.getPlayer();
+        double score = LEVEL_SCORE * (e.getLevelNumber() - rootLevel)
+                + CAPTURE_SCORE * (e.getGhostsCaptured() - rootCaptured)
+                + ENERGY_SCORE * p.getEnergy() / p.getMaxEnergy();
+        if (e.getLevelNumber() == rootLevel) {
+            score += DAMAGE_SCORE * (damage(e.getGhosts()) - rootDamage);
+        }
+        if (p.getEnergy() <= 0) {
+            return score + OUT_OF_ENERGY_SCORE;
+        }
+        LevelGrid level = e.getLevel();
+        int span = level.getWidth() + level.getHeight();
+        int nearest = span;
+        if (p.hasGhost()) {
+            score += CARRY_SCORE;
+            nearest = e.getBankDistance(p.getX(), p.getY());
+        } else {
+            GhostStore ghosts = e.getGhosts();
+            for (int i = 0; i < ghosts.liveCount(); i++) {
+                int s = ghosts.liveSlot(i);
+                nearest = Math.min(nearest,
+                        Math.abs(ghosts.getX(s) - p.getX()) + Math.abs(ghosts.getY(s) - p.getY()));
+            }
+        }
+        return score - DISTANCE_SCORE * Math.min(nearest, span) / span;
+    }
+
+    /**
+     * Adds up the health every ghost has lost, each ghost counting from 0 at
+     * full health to 1 when it is about to be captured.
+     */
+    private static double damage(GhostStore ghosts) {
+        double total = 0;
+        for (int i = 0; i < ghosts.liveCount(); i++) {
+            int s = ghosts.liveSlot(i);
+            total += (double) (ghosts.getMaxHealth(s) - ghosts.getHealth(s)) / ghosts.getMaxHealth(s);
+        }
+        return total;
+    }
+
+    /**
+     * A node of a search tree: a sequence of commands from the root, with
+     * the number of playouts that started with it and their total score.
+     */
+    private static final class Node {
+        final Node[] children = new Node[COMMANDS.length];
+        int expanded;
+        int visits;
+        double total;
+    }
+
+    /**
+     * The engine and tree of one worker thread. A worker is only ever used
+     * by one search task at a time.
+     */
+    private final class Worker {
+
+        private final GameEngine engine = new GameEngine(0);
+        private final Node[] path = new Node[depth + 1];
+
+        /**
+         * Searches from a snapshot until the deadline.
+         *
+         * @return the number of visits of every command at the root
+         */
+        long[] search(byte[] root, long deadline, GameRandom rng) {
+            long start = System.nanoTime();
+            ByteBuffer snapshot = ByteBuffer.wrap(root);
+            engine.restore(snapshot.duplicate());
+            int rootLevel = engine.getLevelNumber();
+            int rootCaptured = engine.getGhostsCaptured();
+            double rootDamage = damage(engine.getGhosts());
+            long rootKey = GameRandom.mix64(engine.getStateHash());
+            Node tree = new Node();
+            int n = 0;
+            do {
+                engine.restore(snapshot.duplicate());
+                engine.reseedRandom(rng.nextLong());
+                int d = descend(tree);
+                long key = engine.getStateHash() ^ rootKey ^ GameRandom.mix64(depth - d);
+                long known = table.get(key);
+                double score;
+                if (TranspositionTable.visits(known) >= TABLE_VISITS) {
+                    score = TranspositionTable.mean(known);
+                } else {
+                    rollout(d, rng);
+                    score = evaluate(engine, rootLevel, rootCaptured, rootDamage);
+                    table.add(key, score);
+                }
+                for (Node node : path) {
+                    if (node == null) {
+                        break;
+                    }
+                    node.visits++;
+                    node.total += score;
+                }
+                n++;
+            } while (System.nanoTime() < deadline);
+            playouts.add(n);
+            searchNanos.add(System.nanoTime() - start);
+            long[] visits = new long[COMMANDS.length];
+            for (int i = 0; i < visits.length; i++) {
+                visits[i] = tree.children[i] == null ? 0 : tree.children[i].visits;
+            }
+            return visits;
+        }
+
+        /**
+         * Plays the tree part of a playout: down the tree by UCT while every
+         * command of a node has been tried, then adds one new node. Fills
+         * path with the nodes visited, ending with null.
+         *
+         * @return the number of turns played
+         */
+        private int descend(Node node) {
+            int d = 0;
+            path[d] = node;
+            while (d < depth && engine.getPlayer().getEnergy() > 0) {
+                int c;
+                if (node.expanded < COMMANDS.length) {
+                    c = node.expanded++;
+                    node.children[c] = new Node();
+                } else {
+                    c = select(node);
+                }
+                engine.playTurn(COMMANDS[c]);
+                node = node.children[c];
+                path[++d] = node;
+                if (node.visits == 0) {
+                    break;      //a new node, continue with random commands
+                }
+            }
+            if (d < depth) {
+                path[d + 1] = null;
+            }
+            return d;
+        }
+
+        /**
+         * Plays random commands after the tree part of a playout until depth
+         * turns have been played or the player runs out of energy.
+         *
+         * @param d The number of turns already played
+         */
+        private void rollout(int d, GameRandom rng) {
+            for (int t = d; t < depth && engine.getPlayer().getEnergy() > 0; t++) {
+                engine.playTurn(COMMANDS[rng.nextInt(COMMANDS.length)]);
+            }
+        }
+
+        /**
+         * Chooses the child of a fully expanded node with the highest UCT
+         * value.
+         */
+        private int select(Node node) {
+            double logVisits = Math.log(node.visits);
+            int best = 0;
+            double bestValue = Double.NEGATIVE_INFINITY;
+            for (int i = 0; i < COMMANDS.length; i++) {
+                Node child = node.children[i];
+                double value = child.total / child.visits
+                        + EXPLORATION * Math.sqrt(logVisits / child.visits);
+                if (value > bestValue) {
+                    bestValue = value;
+                    best = i;
+                }
+            }
+            return best;
+        }
+    }
+}
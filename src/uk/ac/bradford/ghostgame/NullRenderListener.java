@@ -0,0 +1,33 @@
+package uk.ac.bradford.ghostgame;
+
+/**
+ * A RenderListener that discards every update. A GameEngine connected to this
+ * listener runs headless: it never touches Swing or AWT, so it can be used on
+ * machines without a display and can process turns as fast as the engine
+ * allows.
+ */
+public final class NullRenderListener implements RenderListener {
+
+    /**
+     * The single shared instance of this class. The listener has no state so
+     * one instance can be used by any number of engines.
+     */
+    public static final NullRenderListener INSTANCE = new NullRenderListener();
+
+    /**
+     * Private constructor, use INSTANCE instead.
+     */
+    private NullRenderListener() {
+    }
+
+    /**
+     * Does nothing.
+     *
+     * @param tiles ignored
+     * @param player ignored
+     * @param ghosts ignored
+     */
+    @Override
+    public void updateDisplay(LevelGrid tiles, Player player, GhostStore ghosts) {
+    }
+}
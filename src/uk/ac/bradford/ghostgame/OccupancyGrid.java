@@ -0,0 +1,165 @@
+package uk.ac.bradford.ghostgame;
+
+import java.util.Arrays;
+
+/**
+ * The OccupancyGrid class records which ghosts are standing on each tile of a
+ * level, so that finding the ghosts on a tile takes constant time instead of
+ * a scan over every ghost. Ghosts are identified by their slot in the
+ * GhostStore, which keeps the grid up to date as ghosts are added, moved and
+ * removed.
+ *
+ * More than one ghost can stand on the same tile, so each tile holds the head
+ * of a doubly linked list of slots, with the links stored in int arrays
+ * indexed by slot. Adding, removing and moving a ghost are all constant time.
+ */
+final class OccupancyGrid {
+
+    /**
+     * Value used in the arrays below for "no ghost" and "no tile".
+     */
+    static final int NONE = -1;
+
+    private final int width;
+
+    /**
+     * The first ghost slot on each tile, or NONE.
+     */
+    private final int[] head;
+
+    /**
+     * The next and previous ghost slot on the same tile as each slot, or NONE.
+     */
+    private int[] next;
+    private int[] prev;
+
+    /**
+     * The tile index each slot is stored under, or NONE if the slot is empty.
+     */
+    private int[] tileOf;
+
+    /**
+     * Creates an empty occupancy grid for a level.
+     *
+     * @param width The width of the level in tiles
+     * @param height The height of the level in tiles
+     * @param capacity The number of slots to make room for
+     */
+    OccupancyGrid(int width, int height, int capacity) {
+        this.width = width;
+        head = new int[width * height];
+        next = new int[capacity];
+        prev = new int[capacity];
+        tileOf = new int[capacity];
+        Arrays.fill(head, NONE);
+        Arrays.fill(tileOf, NONE);
+    }
+
+    /**
+     * Makes room for more slots. Existing slots keep their tiles.
+     *
+     * @param capacity The new number of slots, not less than before
+     */
+    void grow(int capacity) {
+        int old = tileOf.length;
+        next = Arrays.copyOf(next, capacity);
+        prev = Arrays.copyOf(prev, capacity);
+        tileOf = Arrays.copyOf(tileOf, capacity);
+        Arrays.fill(tileOf, old, capacity, NONE);
+    }
+
+    /**
+     * Adds a ghost slot to the tile at X,Y.
+     *
+     * @param slot The slot of the ghost, which must not be in the grid
+     * @param x The X co-ordinate of the ghost
+     * @param y The Y co-ordinate of the ghost
+     */
+    void add(int slot, int x, int y) {
+        link(slot, y * width + x);
+    }
+
+    /**
+     * Removes a ghost slot from the grid. Does nothing if the slot is not in
+     * the grid.
+     *
+     * @param slot The slot of the ghost
+     */
+    void remove(int slot) {
+        if (tileOf[slot] != NONE) {
+            unlink(slot);
+        }
+    }
+
+    /**
+     * Moves a ghost slot from the list of its old tile to the list of the
+     * tile at X,Y.
+     *
+     * @param slot The slot of the ghost, which must be in the grid
+     * @param x The new X co-ordinate of the ghost
+     * @param y The new Y co-ordinate of the ghost
+     */
+    void move(int slot, int x, int y) {
+        int tile = y * width + x;
+        if (tileOf[slot] != tile) {
+            unlink(slot);
+            link(slot, tile);
+        }
+    }
+
+    /**
+     * Returns the first ghost slot on the tile at X,Y.
+     *
+     * @param x The X co-ordinate of the tile
+     * @param y The Y co-ordinate of the tile
+     * @return a ghost slot, or NONE if no ghost is on the tile
+     */
+    int first(int x, int y) {
+        return head[y * width + x];
+    }
+
+    /**
+     * Returns the next ghost slot on the same tile as the given slot.
+     *
+     * @param slot A slot returned by first or next
+     * @return the next slot on the same tile, or NONE
+     */
+    int next(int slot) {
+        return next[slot];
+    }
+
+    /**
+     * Returns the previous ghost slot on the same tile as the given slot.
+     *
+     * @param slot A slot in the grid
+     * @return the previous slot on the same tile, or NONE if slot is first
+     */
+    int prev(int slot) {
+        return prev[slot];
+    }
+
+    private void link(int slot, int tile) {
+        int h = head[tile];
+        next[slot] = h;
+        prev[slot] = NONE;
+        if (h != NONE) {
+            prev[h] = slot;
+        }
+        head[tile] = slot;
+        tileOf[slot] = tile;
+    }
+
+    private void unlink(int slot) {
+        int n = next[slot];
+        int p = prev[slot];
+        if (p != NONE) {
+            next[p] = n;
+        } else {
+            head[tileOf[slot]] = n;
+        }
+        if (n != NONE) {
+            prev[n] = p;
+        }
+        tileOf[slot] = NONE;
+    }
+}
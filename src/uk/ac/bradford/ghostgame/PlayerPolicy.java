@@ -0,0 +1,20 @@
+package uk.ac.bradford.ghostgame;
+
+/**
+ * A PlayerPolicy decides what the player does each turn when a game is played
+ * by the computer instead of from the keyboard, for example by the
+ * BatchSimulator.
+ */
+public interface PlayerPolicy {
+
+    /**
+     * Chooses the command for the next turn.
+     *
+     * @param engine The engine playing the game, which can be asked about the
+     * current state of the game
+     * @param rng A random number generator owned by the caller, to be used
+     * for any random choice so that games stay reproducible
+     * @return the Command to play
+     */
+    Command nextCommand(GameEngine engine, GameRandom rng);
+}
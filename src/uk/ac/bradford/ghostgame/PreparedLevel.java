@@ -0,0 +1,128 @@
+package uk.ac.bradford.ghostgame;
+
+import uk.ac.bradford.ghostgame.GameEngine.TileType;
+
+/**
+ * A PreparedLevel holds everything the engine needs to start playing a level:
+ * the tiles, the distance to the bank, the ghosts and the place the player
+ * starts. It depends only on the game's seed and the level number, never on
+ * how earlier levels were played, so it can be built ahead of time on another
+ * thread and the result is exactly the same as building it when the level
+ * starts.
+ *
+ * A PreparedLevel is built once and then handed over to a single engine,
+ * which takes ownership of its objects.
+ */
+final class PreparedLevel {
+
+    /**
+     * The level number this level was built for.
+     */
+    final int number;
+
+    final LevelGrid level;
+
+    /**
+     * Path distance from the nearest bank to every tile of the level.
+     */
+    final DistanceField bankDistance;
+
+    final GhostStore ghosts;
+
+    /**
+     * Where the player starts the level.
+     */
+    final int playerX;
+    final int playerY;
+
+    /**
+     * The spawn tiles left over once the ghosts and the player have been
+     * placed.
+     */
+    final SpawnPool spawnLocations;
+
+    /**
+     * Builds a level. Ghosts take their positions from the spawn locations
+     * first and the player takes the next one, all chosen with a random
+     * number generator created from the seed and the level number. The
+     * speed of every ghost is chosen after that, so levels are laid out the
+     * same as before ghosts had speeds.
+     *
+     * @param seed The seed of the game
+     * @param number The level number
+     * @param width The width of the level in tiles
+     * @param height The height of the level in tiles
+     */
+    PreparedLevel(long seed, int number, int width, int height) {
+        LevelGeneratedEvent event = new LevelGeneratedEvent();
+        event.begin();
+        this.number = number;
+        GameRandom rng = levelRandom(seed, number);
+        level = LevelGenerator.generate(rng, width, height, ghostsForLevel(number));
+        bankDistance = new DistanceField(width, height);
+        bankDistance.compute(level, TileType.BANK);
+        spawnLocations = new SpawnPool(level);
+        int count = Math.min(ghostsForLevel(number), spawnLocations.size() - 1);
+        int[] spawns = new int[count];
+        for (int i = 0; i < count; i++) {
+            spawns[i] = spawnLocations.draw(rng);
+        }
+        int tile = spawnLocations.draw(rng);
+        playerX = spawnLocations.x(tile);
+        playerY = spawnLocations.y(tile);
+        ghosts = new GhostStore(width, height, count);
+        for (int i = 0; i < count; i++) {
+            int delay = ghostDelay(rng);
+            ghosts.add(100, spawnLocations.x(spawns[i]), spawnLocations.y(spawns[i]), delay, delay);
+        }
+        event.end();
+        if (event.shouldCommit()) {
+            event.levelNumber = number;
+            event.width = width;
+            event.height = height;
+            event.ghostCount = count;
+            event.commit();
+        }
+    }
+
+    /**
+     * Creates the random number generator for the layout and spawn positions
+     * of a level.
+     *
+     * @param seed The seed of the game
+     * @param number The level number
+     * @return a new generator that only depends on the seed and level number
+     */
+    static GameRandom levelRandom(long seed, int number) {
+        return new GameRandom(GameRandom.mix64(seed ^ GameRandom.mix64(number)));
+    }
+
+    /**
+     * Chooses the speed of a new ghost: one in four is slow, one in four is
+     * fast and the rest move at the normal speed.
+     *
+     * @param rng The random number generator of the level
+     * @return the delay of the ghost in clock ticks
+     */
+    static int ghostDelay(GameRandom rng) {
+        switch (rng.nextInt(4)) {
+            case 0:
+                return GameEngine.GHOST_DELAY_SLOW;
+            case 1:
+                return GameEngine.GHOST_DELAY_FAST;
+            default:
+                return GameEngine.GHOST_DELAY_NORMAL;
+        }
+    }
+
+    /**
+     * Returns the number of ghosts (and breaches) in a level. Each level adds
+     * one more.
+     *
+     * @param number The level number
+     * @return the number of ghosts to add to the level
+     */
+    static int ghostsForLevel(int number) {
+        return 3 + number;
+    }
+}
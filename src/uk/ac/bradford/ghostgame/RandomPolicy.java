@@ -0,0 +1,26 @@
+package uk.ac.bradford.ghostgame;
+
+/**
+ * A PlayerPolicy that picks one of the commands at random every turn,
+ * including waiting.
+ */
+public final class RandomPolicy implements PlayerPolicy {
+
+    /**
+     * The commands to choose from. Command.values() copies its array every
+     * call, so the copy is made once here.
+     */
+    private static final Command[] COMMANDS = Command.values();
+
+    /**
+     * Returns a random command.
+     *
+     * @param engine ignored
+     * @param rng The generator used to pick the command
+     * @return any Command with equal probability
+     */
+    @Override
+    public Command nextCommand(GameEngine engine, GameRandom rng) {
+        return COMMANDS[rng.nextInt(COMMANDS.length)];
+    }
+}
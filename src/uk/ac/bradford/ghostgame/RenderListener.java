@@ -0,0 +1,22 @@
+package uk.ac.bradford.ghostgame;
+
+/**
+ * A RenderListener receives the state of the game from a GameEngine at the end
+ * of every turn so that it can be displayed. The GameGUI class implements this
+ * interface to draw the game on screen; the NullRenderListener class ignores
+ * every update so that an engine can be run without any display at all.
+ */
+public interface RenderListener {
+
+    /**
+     * Called by the engine whenever the level, player or ghosts have changed
+     * and should be displayed again.
+     *
+     * @param tiles The LevelGrid holding the tiles of the current level
+     * @param player The current Player object
+     * @param ghosts The GhostStore holding the ghosts of the current level. It
+     * belongs to the engine and changes every turn, so anything that needs
+     * it later must copy it.
+     */
+    void updateDisplay(LevelGrid tiles, Player player, GhostStore ghosts);
+}
@@ -0,0 +1,28 @@
+package uk.ac.bradford.ghostgame;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * A JDK Flight Recorder event for one call to Canvas.paintComponent. Its
+ * duration is the time spent painting on the event dispatch thread.
+ */
+@Name("uk.ac.bradford.ghostgame.RepaintCompleted")
+@Label("Repaint Completed")
+@Category("Ghost Game")
+@Description("Painting the game on the event dispatch thread")
+final class RepaintCompletedEvent extends jdk.jfr.Event {
+
+    @Label("Clip Width")
+    @Description("The width in pixels of the area repainted")
+    int clipWidth;
+
+    @Label("Clip Height")
+    @Description("The height in pixels of the area repainted")
+    int clipHeight;
+
+    @Label("Ghost Count")
+    int ghostCount;
+}
@@ -0,0 +1,77 @@
+package uk.ac.bradford.ghostgame;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+
+/**
+ * Plays back a file written by a ReplayRecorder on a headless GameEngine, as
+ * fast as the engine can process turns. The engine is created with the
+ * recorded seed and level size and given the recorded commands in order, so
+ * it ends in exactly the state the recorded game was in.
+ */
+public final class ReplayPlayer {
+
+    /**
+     * The size of the header of a replay file, before the first command.
+     */
+    private static final int HEADER_SIZE = 21;
+
+    /**
+     * This class only has static methods.
+     */
+    private ReplayPlayer() {
+    }
+
+    /**
+     * Replays a file.
+     *
+     * @param file The replay file to play
+     * @return the headless engine after the last recorded turn
+     * @throws IOException if the file cannot be read, is not a replay file,
+     * or was recorded by a version of the game with different rules
+     */
+    public static GameEngine replay(File file) throws IOException {
+        return replay(Files.readAllBytes(file.toPath()));
+    }
+
+    /**
+     * Replays the contents of a replay file.
+     *
+     * @param data The bytes of a replay file
+     * @return the headless engine after the last recorded turn
+     * @throws IOException if the data is not a replay file, or was recorded
+     * by a version of the game with different rules
+     */
+    public static GameEngine replay(byte[] data) throws IOException {
+        ByteBuffer in = ByteBuffer.wrap(data);
+        if (in.remaining() < HEADER_SIZE || in.getInt() != ReplayRecorder.MAGIC) {
+            throw new IOException("Not a replay file");
+        }
+        int version = in.get();
+        if (version != ReplayRecorder.VERSION) {
+            throw new IOException("Unsupported replay version " + version);
+        }
+        long seed = in.getLong();
+        int width = in.getInt();
+        int height = in.getInt();
+        GameEngine engine;
+        try {
+            engine = new GameEngine(seed, width, height);
+        } catch (IllegalArgumentException e) {
+            throw new IOException(e.getMessage(), e);
+        }
+        engine.startGame();
+        for (int i = in.position(); i < data.length; i++) {
+            Command command;
+            try {
+                command = Command.fromCode(data[i]);
+            } catch (IllegalArgumentException e) {
+                throw new IOException(e.getMessage(), e);
+            }
+            engine.playTurn(command);
+        }
+        return engine;
+    }
+}
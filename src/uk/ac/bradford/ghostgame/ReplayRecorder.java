@@ -0,0 +1,97 @@
+package uk.ac.bradford.ghostgame;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+/**
+ * Records a game so that it can be played back exactly by a ReplayPlayer.
+ * Because a game is completely decided by its random seed, its level size
+ * and the commands the player gives, a recording only needs those and one
+ * byte per turn.
+ *
+ * A replay file is laid out as follows, with numbers in big-endian order:
+ * <pre>
+ * 4 bytes  the characters GHRP
+ * 1 byte   the format version, currently 3
+ * 8 bytes  the random seed of the engine
+ * 4 bytes  the width of the levels, in tiles
+ * 4 bytes  the height of the levels, in tiles
+ * 1 byte per turn, the code of the Command played
+ * </pre>
+ * Commands are only ever appended, so a file cut short by a crash still
+ * replays every turn that reached the disk.
+ */
+public class ReplayRecorder implements AutoCloseable {
+
+    /**
+     * The first four bytes of every replay file, "GHRP".
+     */
+    static final int MAGIC = 0x47485250;
+
+    /**
+     * The version of the file format written by this class. A replay only
+     * holds the seed and the commands, so it depends on every rule of the
+     * game as well as on the layout of the file: this must be increased
+     * whenever a change would make the same seed and commands play a
+     * different game (level generation, ghost movement or speeds, the order
+     * things happen in a turn), and ReplayPlayer refuses every other
+     * version. Adding a command code does not change any old game, since no
+     * older file can hold the new code, so it needs no new version.
+     */
+    static final int VERSION = 3;
+
+    private final DataOutputStream out;
+
+    /**
+     * Creates a replay file and writes its header. An existing file is
+     * replaced.
+     *
+     * @param file The file to write
+     * @param seed The random seed of the engine being recorded
+     * @param width The width of the levels of the engine being recorded
+     * @param height The height of the levels of the engine being recorded
+     * @throws IOException if the file cannot be written
+     */
+    public ReplayRecorder(File file, long seed, int width, int height) throws IOException {
+        out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+        out.writeInt(MAGIC);
+        out.writeByte(VERSION);
+        out.writeLong(seed);
+        out.writeInt(width);
+        out.writeInt(height);
+        out.flush();
+    }
+
+    /**
+     * Appends the command played in a turn. The command is buffered; call
+     * flush to make sure it reaches the file.
+     *
+     * @param c The command played
+     * @throws IOException if the file cannot be written
+     */
+    public void record(Command c) throws IOException {
+        out.writeByte(c.code());
+    }
+
+    /**
+     * Writes any buffered commands to the file.
+     *
+     * @throws IOException if the file cannot be written
+     */
+    public void flush() throws IOException {
+        out.flush();
+    }
+
+    /**
+     * Writes any buffered commands and closes the file.
+     *
+     * @throws IOException if the file cannot be written
+     */
+    @Override
+    public void close() throws IOException {
+        out.close();
+    }
+}
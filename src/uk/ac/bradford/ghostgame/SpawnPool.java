@@ -0,0 +1,168 @@
+package uk.ac.bradford.ghostgame;
+
+import java.nio.ByteBuffer;
+import uk.ac.bradford.ghostgame.GameEngine.TileType;
+
+/**
+ * A SpawnPool holds the tiles of a level where the player or a ghost can be
+ * placed, and hands them out in a random order without repeats. Tiles are
+ * stored as their LevelGrid index (y * width + x) in a packed int array
+ * rather than as Point objects, so a pool for a large level is one array and
+ * drawing from it allocates nothing.
+ *
+ * A random draw swaps the chosen tile with the last tile still in the pool
+ * and shrinks the pool by one, so every draw takes constant time however
+ * many tiles the pool holds. The order of the remaining tiles changes as they
+ * are drawn.
+ */
+final class SpawnPool {
+
+    private final int width;
+
+    /**
+     * The tile indexes still in the pool are tiles[0] to tiles[size - 1].
+     */
+    private final int[] tiles;
+
+    private int size;
+
+    /**
+     * Creates a pool holding every tile of a level the player can walk into,
+     * apart from banks.
+     *
+     * @param level The level to find spawn tiles in
+     */
+    SpawnPool(LevelGrid level) {
+        width = level.getWidth();
+        int height = level.getHeight();
+        int n = 0;
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                if (isSpawn(level, x, y)) {
+                    n++;
+                }
+            }
+        }
+        tiles = new int[n];
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                if (isSpawn(level, x, y)) {
+                    tiles[size++] = y * width + x;
+                }
+            }
+        }
+    }
+
+    /**
+     * Creates a pool holding the given tiles.
+     */
+    private SpawnPool(int width, int[] tiles) {
+        this.width = width;
+        this.tiles = tiles;
+        size = tiles.length;
+    }
+
+    private static boolean isSpawn(LevelGrid level, int x, int y) {
+        return level.isPlayerOpen(x, y) && level.get(x, y) != TileType.BANK;
+    }
+
+    /**
+     * Returns the number of tiles left in the pool.
+     *
+     * @return the number of tiles that can still be drawn
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Returns a tile still in the pool without removing it.
+     *
+     * @param i The position in the pool, from 0 to size() - 1
+     * @return the index of the tile in the level
+     */
+    int get(int i) {
+        return tiles[i];
+    }
+
+    /**
+     * Removes a random tile from the pool. The pool must not be empty.
+     *
+     * @param rng The generator used to choose the tile
+     * @return the index of the tile in the level
+     */
+    int draw(GameRandom rng) {
+        int i = rng.nextInt(size);
+        int tile = tiles[i];
+        tiles[i] = tiles[--size];
+        tiles[size] = tile;
+        return tile;
+    }
+
+    /**
+     * Returns the number of bytes write puts in a buffer for this pool.
+     *
+     * @return the size of the written pool in bytes
+     */
+    int serializedSize() {
+        return 4 + 4 * size;
+    }
+
+    /**
+     * Writes the tiles still in the pool, in their current order, to a
+     * buffer: the number of tiles as an int followed by the tile indexes.
+     *
+     * @param out The buffer to write to
+     */
+    void write(ByteBuffer out) {
+        out.putInt(size);
+        for (int i = 0; i < size; i++) {
+            out.putInt(tiles[i]);
+        }
+    }
+
+    /**
+     * Reads a pool written by write.
+     *
+     * @param in The buffer to read from
+     * @param level The level the pool belongs to
+     * @return a new pool that draws the same tiles in the same order as the
+     * pool that was written, given the same random numbers
+     * @throws IllegalArgumentException if the data is not a valid pool
+     */
+    static SpawnPool read(ByteBuffer in, LevelGrid level) {
+        int n = in.getInt();
+        if (n < 0 || n > in.remaining() / 4) {
+            throw new IllegalArgumentException("Bad spawn pool size " + n);
+        }
+        int[] t = new int[n];
+        int tileCount = level.getWidth() * level.getHeight();
+        for (int i = 0; i < n; i++) {
+            t[i] = in.getInt();
+            if (t[i] < 0 || t[i] >= tileCount) {
+                throw new IllegalArgumentException("Bad spawn tile " + t[i]);
+            }
+        }
+        return new SpawnPool(level.getWidth(), t);
+    }
+
+    /**
+     * Returns the X co-ordinate of a tile index from this pool.
+     *
+     * @param tile The index of a tile in the level
+     * @return the X co-ordinate of the tile
+     */
+    int x(int tile) {
+        return tile % width;
+    }
+
+    /**
+     * Returns the Y co-ordinate of a tile index from this pool.
+     *
+     * @param tile The index of a tile in the level
+     * @return the Y co-ordinate of the tile
+     */
+    int y(int tile) {
+        return tile / width;
+    }
+}
@@ -0,0 +1,125 @@
+package uk.ac.bradford.ghostgame;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A fixed size hash table from game state hashes (see
+ * GameEngine.getStateHash) to the average score of the searches that reached
+ * that state and how many there were, which search threads can share without
+ * locking.
+ *
+ * Every entry is two longs in an AtomicLongArray: the data (the average
+ * score as a float in the top 32 bits and the visit count in the bottom 32)
+ * and the key XORed with the data. A reader only accepts an entry if the two
+ * words XOR back to the key it is looking for, so if two threads write the
+ * same entry at once and their words get mixed up, the entry just looks
+ * empty instead of returning another state's data. Writes are never retried:
+ * a state that maps to the same entry as another replaces it, and an update
+ * that races with another update to the same entry can be lost. A search
+ * only uses the table as a hint, so losing the odd result is cheaper than
+ * making threads wait for each other.
+ */
+public final class TranspositionTable {
+
+    private final AtomicLongArray entries;
+    private final int mask;
+
+    /**
+     * Creates an empty table.
+     *
+     * @param capacity The number of entries to make room for, rounded up to
+     * a power of two
+     */
+    public TranspositionTable(int capacity) {
+        int size = Integer.highestOneBit(Math.max(capacity - 1, 1)) << 1;
+        mask = size - 1;
+        entries = new AtomicLongArray(2 * size);
+    }
+
+    /**
+     * Returns the number of entries in the table.
+     *
+     * @return the number of states the table can hold at once
+     */
+    public int capacity() {
+        return mask + 1;
+    }
+
+    /**
+     * Looks up a state.
+     *
+     * @param key The hash of the state
+     * @return the data stored for the state, or 0 (no visits) if the state
+     * is not in the table
+     */
+    public long get(long key) {
+        int i = ((int) key & mask) << 1;
+        long data = entries.get(i + 1);
+        return (entries.get(i) ^ data) == key ? data : 0;
+    }
+
+    /**
+     * Stores data for a state, replacing whatever was in its entry.
+     *
+     * @param key The hash of the state
+     * @param data The data to store, made with entry
+     */
+    public void put(long key, long data) {
+        int i = ((int) key & mask) << 1;
+        entries.set(i + 1, data);
+        entries.set(i, key ^ data);
+    }
+
+    /**
+     * Adds one more score to the average stored for a state.
+     *
+     * @param key The hash of the state
+     * @param score The score to add
+     */
+    public void add(long key, double score) {
+        long data = get(key);
+        int visits = visits(data);
+        double mean = visits == 0 ? score : mean(data) + (score - mean(data)) / (visits + 1);
+        put(key, entry((float) mean, visits == Integer.MAX_VALUE ? visits : visits + 1));
+    }
+
+    /**
+     * Empties the table.
+     */
+    public void clear() {
+        for (int i = 0; i < entries.length(); i++) {
+            entries.set(i, 0);
+        }
+    }
+
+    /**
+     * Packs an average score and a visit count into one long.
+     *
+     * @param mean The average score
+     * @param visits The number of scores averaged
+     * @return data that can be stored with put
+     */
+    public static long entry(float mean, int visits) {
+        return (long) Float.floatToRawIntBits(mean) << 32 | (visits & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Returns the average score from data returned by get.
+     *
+     * @param data The data of an entry
+     * @return the average score
+     */
+    public static float mean(long data) {
+        return Float.intBitsToFloat((int) (data >>> 32));
+    }
+
+    /**
+     * Returns the visit count from data returned by get.
+     *
+     * @param data The data of an entry
+     * @return the number of scores averaged, 0 if the state was not found
+     */
+    public static int visits(long data) {
+        return (int) data;
+    }
+}
@@ -0,0 +1,33 @@
+package uk.ac.bradford.ghostgame;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * A JDK Flight Recorder event for one call to GameEngine.doTurn. Its duration
+ * is the time the turn took, so slow turns can be lined up with garbage
+ * collections and safepoints in the same recording. When no recording is
+ * running the event is never committed and costs next to nothing.
+ */
+@Name("uk.ac.bradford.ghostgame.TurnProcessed")
+@Label("Turn Processed")
+@Category("Ghost Game")
+@Description("A game turn: moving the ghosts, drawing and possibly moving to the next level")
+final class TurnProcessedEvent extends jdk.jfr.Event {
+
+    @Label("Turn Number")
+    int turnNumber;
+
+    @Label("Level Number")
+    int levelNumber;
+
+    @Label("Ghost Count")
+    @Description("The number of live ghosts at the end of the turn")
+    int ghostCount;
+
+    @Label("Ghosts Moved")
+    @Description("The number of ghost actions made in the turn; fast ghosts can act twice and slow ghosts not at all")
+    int ghostsMoved;
+}
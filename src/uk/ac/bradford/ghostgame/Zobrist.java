@@ -0,0 +1,96 @@
+package uk.ac.bradford.ghostgame;
+
+import uk.ac.bradford.ghostgame.GameEngine.TileType;
+
+/**
+ * Zobrist keys for the parts of a game state. Every feature (a tile type on a
+ * tile, a ghost on a tile, the player on a tile, and so on) has a random
+ * 64 bit key, and the hash of a state combines the keys of its features, so
+ * a change to one feature changes the hash by removing the old key and adding
+ * the new one instead of hashing the whole state again.
+ *
+ * Keys are not stored in tables: each key is worked out when needed by
+ * scrambling the feature and tile index with GameRandom.mix64, so keys cost
+ * no memory however large the level is, and are the same in every run of
+ * the program.
+ *
+ * FLOOR1 tiles have the key 0, so most of a level adds nothing to its hash.
+ */
+final class Zobrist {
+
+    /**
+     * The number of energy points that share a key, so that states differing
+     * only by a little energy hash the same.
+     */
+    static final int ENERGY_BUCKET = 10;
+
+    private static final int TILE = 0;
+    private static final int GHOST = 1;
+    private static final int PLAYER = 2;
+    private static final int ENERGY = 3;
+    private static final int CARRYING = 4;
+
+    private static final int FLOOR1 = TileType.FLOOR1.ordinal();
+
+    /**
+     * This class only has static members.
+     */
+    private Zobrist() {
+    }
+
+    /**
+     * Returns the key for a tile type on a tile.
+     *
+     * @param tile The index of the tile in the level (y * width + x)
+     * @param code The ordinal of the TileType of the tile
+     * @return the key, 0 for FLOOR1
+     */
+    static long tile(int tile, int code) {
+        return code == FLOOR1 ? 0 : key(TILE, (long) tile << 3 | code);
+    }
+
+    /**
+     * Returns the key for one ghost standing on a tile. Several ghosts can
+     * stand on the same tile, so ghost keys are added together rather than
+     * combined with XOR, where two ghosts on one tile would cancel out.
+     *
+     * @param tile The index of the tile in the level
+     * @return the key
+     */
+    static long ghost(int tile) {
+        return key(GHOST, tile);
+    }
+
+    /**
+     * Returns the key for the player standing on a tile.
+     *
+     * @param tile The index of the tile in the level
+     * @return the key
+     */
+    static long player(int tile) {
+        return key(PLAYER, tile);
+    }
+
+    /**
+     * Returns the key for the player's energy.
+     *
+     * @param energy The energy of the player
+     * @return the key for the bucket the energy falls in
+     */
+    static long energy(int energy) {
+        return key(ENERGY, Math.max(energy, 0) / ENERGY_BUCKET);
+    }
+
+    /**
+     * Returns the key for the player carrying a captured ghost.
+     *
+     * @return the key
+     */
+    static long carrying() {
+        return key(CARRYING, 0);
+    }
+
+    private static long key(int feature, long n) {
+        return GameRandom.mix64(((long) feature << 56 ^ n) * 0x9E3779B97F4A7C15L + 0x632BE59BD9B4E019L);
+    }
+}
@@ -0,0 +1,77 @@
+package uk.ac.bradford.ghostgame;
+
+import uk.ac.bradford.ghostgame.GameEngine.TileType;
+
+/**
+ * Regression check for ChunkedLevel bounds. Levels whose size is not a
+ * multiple of the chunk size have edge chunks that reach past the level, and
+ * a tile there must be refused even after its chunk has been changed and
+ * kept. The same goes for negative co-ordinates, whose chunk keys must not
+ * match a changed chunk inside the level. Run with "ant check".
+ */
+public final class ChunkedLevelCheck {
+
+    private static final int WIDTH = 100;
+    private static final int HEIGHT = 70;
+
+    /**
+     * This class only has static methods.
+     */
+    private ChunkedLevelCheck() {
+    }
+
+    /**
+     * Runs the check.
+     *
+     * @param args Not used
+     */
+    public static void main(String[] args) {
+        ChunkedLevel level = new ChunkedLevel(1, 1, WIDTH, HEIGHT, 4);
+        //change every chunk along the edges, including the corner chunks
+        for (int x = 0; x < WIDTH; x += ChunkedLevel.CHUNK_SIZE) {
+            level.set(x, 0, TileType.FLOOR2);
+            level.set(x, HEIGHT - 1, TileType.FLOOR2);
+        }
+        for (int y = 0; y < HEIGHT; y += ChunkedLevel.CHUNK_SIZE) {
+            level.set(0, y, TileType.FLOOR2);
+            level.set(WIDTH - 1, y, TileType.FLOOR2);
+        }
+        int[][] outside = {
+            {WIDTH, 0}, {WIDTH + 1, HEIGHT - 1}, {WIDTH | ChunkedLevel.CHUNK_SIZE - 1, 5},
+            {0, HEIGHT}, {WIDTH - 1, HEIGHT | ChunkedLevel.CHUNK_SIZE - 1},
+            {-1, 0}, {0, -1}, {-1, -1}, {-ChunkedLevel.CHUNK_SIZE, 0},
+            {Integer.MIN_VALUE, 0}, {0, Integer.MIN_VALUE}, {Integer.MAX_VALUE, Integer.MAX_VALUE}
+        };
+        int changed = level.getChunksChanged();
+        for (int[] tile : outside) {
+            expectRefused(level, tile[0], tile[1]);
+        }
+        if (level.getChunksChanged() != changed) {
+            throw new AssertionError("a write outside the level changed a chunk");
+        }
+        if (level.get(WIDTH - 1, 0) != TileType.FLOOR2) {
+            throw new AssertionError("a tile inside the level lost its change");
+        }
+        System.out.println("ChunkedLevelCheck: " + outside.length + " tiles outside a "
+                + WIDTH + "x" + HEIGHT + " level refused");
+    }
+
+    /**
+     * Checks that reading and writing a tile outside the level both throw
+     * IndexOutOfBoundsException.
+     */
+    private static void expectRefused(ChunkedLevel level, int x, int y) {
+        try {
+            level.set(x, y, TileType.WALL);
+            throw new AssertionError("set accepted tile " + x + "," + y);
+        } catch (IndexOutOfBoundsException e) {
+            //expected
+        }
+        try {
+            level.get(x, y);
+            throw new AssertionError("get accepted tile " + x + "," + y);
+        } catch (IndexOutOfBoundsException e) {
+            //expected
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package uk.ac.bradford.ghostgame;
+
+/**
+ * Regression check that MctsPolicy plays better than RandomPolicy. Both play
+ * the same fixed set of seeds for the same number of turns, and each game is
+ * scored by the health it took from ghosts: the full health of every ghost
+ * captured plus the health lost by ghosts still free. Captures are rare in
+ * games this short, so the damage is what usually separates the two. The
+ * search gets one thread and a few milliseconds per turn, so that a slow
+ * machine still has a good margin.
+ *
+ * The search budget is measured in time, so MCTS games are not exactly
+ * reproducible; the check only fails if MCTS does no better than random play
+ * over all the seeds together. Run with "ant check".
+ */
+public final class MctsCheck {
+
+    private static final long[] SEEDS = {1, 2, 3, 4, 5, 6, 7, 8};
+
+    private static final int TURNS = 300;
+
+    /**
+     * The search time per turn in milliseconds and the playout depth.
+     */
+    private static final int BUDGET = 5;
+    private static final int DEPTH = 12;
+
+    /**
+     * The health every ghost starts with, which is what a captured ghost
+     * counts for.
+     */
+    private static final int GHOST_HEALTH = 100;
+
+    /**
+     * This class only has static methods.
+     */
+    private MctsCheck() {
+    }
+
+    /**
+     * Runs the check.
+     *
+     * @param args Not used
+     */
+    public static void main(String[] args) {
+        int mctsDamage = 0;
+        int randomDamage = 0;
+        int mctsCaptured = 0;
+        int randomCaptured = 0;
+        MctsPolicy mcts = new MctsPolicy(1, BUDGET, DEPTH);
+        PlayerPolicy random = new RandomPolicy();
+        try {
+            for (long seed : SEEDS) {
+                GameEngine engine = play(mcts, seed);
+                mctsDamage += damage(engine);
+                mctsCaptured += engine.getGhostsCaptured();
+                engine = play(random, seed);
+                randomDamage += damage(engine);
+                randomCaptured += engine.getGhostsCaptured();
+            }
+        } finally {
+            mcts.close();
+        }
+        String result = String.format("MCTS took %d health and captured %d ghosts, random took %d and captured %d",
+                mctsDamage, mctsCaptured, randomDamage, randomCaptured);
+        if (mctsDamage <= randomDamage) {
+            throw new AssertionError(result);
+        }
+        System.out.println("MctsCheck: " + SEEDS.length + " seeds, " + result);
+    }
+
+    /**
+     * Plays one game.
+     *
+     * @param policy The policy choosing the commands
+     * @param seed The seed of the game
+     * @return the engine at the end of the game
+     */
+    private static GameEngine play(PlayerPolicy policy, long seed) {
+        GameEngine engine = new GameEngine(seed);
+        GameRandom rng = new GameRandom(seed).split();
+        engine.startGame();
+        for (int turn = 0; turn < TURNS && engine.getPlayer().getEnergy() > 0; turn++) {
+            engine.playTurn(policy.nextCommand(engine, rng));
+        }
+        return engine;
+    }
+
+    /**
+     * Adds up the health taken from ghosts in a game.
+     *
+     * @param engine The engine at the end of the game
+     * @return the health of the ghosts captured plus the health lost by the
+     * ghosts still free
+     */
+    private static int damage(GameEngine engine) {
+        int total = GHOST_HEALTH * engine.getGhostsCaptured();
+        GhostStore ghosts = engine.getGhosts();
+        for (int i = 0; i < ghosts.liveCount(); i++) {
+            int slot = ghosts.liveSlot(i);
+            total += ghosts.getMaxHealth(slot) - ghosts.getHealth(slot);
+        }
+        return total;
+    }
+}
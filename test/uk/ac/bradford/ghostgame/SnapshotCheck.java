@@ -0,0 +1,137 @@
+package uk.ac.bradford.ghostgame;
+
+import java.util.Arrays;
+
+/**
+ * Regression check for GameEngine snapshots. Plays seeded games with random
+ * commands and, every few turns, restores a snapshot into a fresh engine and
+ * checks that the restored engine writes back exactly the same bytes, and
+ * that it is still identical to the original at the next snapshot after both
+ * have been given the same commands.
+ *
+ * It also checks the Zobrist state hash. A restored engine works its hash out
+ * from scratch, while the original has kept its hash up to date with every
+ * move, so the two hashes must match after every restore and every turn
+ * played since.
+ *
+ * The games cover the default level size, a larger level, crowds of extra
+ * ghosts and a small activity distance so that some ghosts are dormant, which
+ * between them write every part of the snapshot. Half of the games are played
+ * by a ChasePolicy, because random commands almost never capture a ghost. Run with "ant check"; a
+ * failure throws an AssertionError naming the seed and turn.
+ */
+public final class SnapshotCheck {
+
+    private static final int GAMES = 100;
+
+    private static final int TURNS = 400;
+
+    /**
+     * The number of turns between snapshots.
+     */
+    private static final int SNAPSHOT_INTERVAL = 50;
+
+    /**
+     * The activity distance of the games played with dormant ghosts.
+     */
+    private static final int SMALL_ACTIVITY_DISTANCE = 8;
+
+    private static final Command[] COMMANDS = Command.values();
+
+    private static final PlayerPolicy CHASE = new ChasePolicy();
+
+    /**
+     * This class only has static methods.
+     */
+    private SnapshotCheck() {
+    }
+
+    /**
+     * Runs the check.
+     *
+     * @param args Not used
+     */
+    public static void main(String[] args) {
+        int snapshots = 0;
+        for (long seed = 1; seed <= GAMES; seed++) {
+            GameEngine engine = newEngine(seed);
+            GameEngine restored = null;
+            GameRandom moves = new GameRandom(seed * 31);
+            for (int turn = 1; turn <= TURNS; turn++) {
+                Command c = seed % 2 == 1 ? CHASE.nextCommand(engine, moves)
+                        : COMMANDS[moves.nextInt(COMMANDS.length)];
+                engine.playTurn(c);
+                if (restored != null) {
+                    restored.playTurn(c);
+                    if (restored.getStateHash() != engine.getStateHash()) {
+                        fail(seed, turn, "state hash differs from the restored engine's");
+                    }
+                }
+                if (turn % SNAPSHOT_INTERVAL == 0) {
+                    byte[] data = engine.snapshot();
+                    if (restored != null && !Arrays.equals(data, restored.snapshot())) {
+                        fail(seed, turn, "restored engine diverged in the last "
+                                + SNAPSHOT_INTERVAL + " turns");
+                    }
+                    restored = restore(data, seed, turn);
+                    if (restored.getStateHash() != engine.getStateHash()) {
+                        fail(seed, turn, "state hash differs after restore");
+                    }
+                    snapshots++;
+                }
+            }
+        }
+        System.out.println("SnapshotCheck: " + GAMES + " games, " + snapshots + " snapshots restored");
+    }
+
+    /**
+     * Creates and starts the engine for one game. Seeds are spread over the
+     * kinds of game so that each kind is played many times.
+     *
+     * @param seed The seed of the game
+     * @return a started engine
+     */
+    private static GameEngine newEngine(long seed) {
+        GameEngine engine = seed % 4 == 1
+                ? new GameEngine(seed, 64, 48) : new GameEngine(seed);
+        if (seed % 5 == 2) {
+            engine.setActivityDistance(SMALL_ACTIVITY_DISTANCE);
+        }
+        engine.startGame();
+        if (seed % 2 == 0) {
+            SpawnPool spawns = engine.getSpawns();
+            Ghost[] crowd = new Ghost[200];
+            for (int i = 0; i < crowd.length; i++) {
+                int tile = spawns.get(i % spawns.size());
+                crowd[i] = new Ghost(100, spawns.x(tile), spawns.y(tile));
+            }
+            engine.setGhosts(crowd);
+        }
+        return engine;
+    }
+
+    /**
+     * Restores a snapshot into a fresh engine and checks that it writes back
+     * the same snapshot.
+     *
+     * @param data The snapshot
+     * @param seed The seed of the game, for error messages
+     * @param turn The turn of the game, for error messages
+     * @return the restored engine
+     */
+    private static GameEngine restore(byte[] data, long seed, int turn) {
+        GameEngine restored = new GameEngine(~seed);
+        restored.restore(data);
+        if (restored.snapshotSize() != data.length) {
+            fail(seed, turn, "snapshotSize " + restored.snapshotSize() + " but wrote " + data.length);
+        }
+        if (!Arrays.equals(data, restored.snapshot())) {
+            fail(seed, turn, "restored engine writes a different snapshot");
+        }
+        return restored;
+    }
+
+    private static void fail(long seed, int turn, String message) {
+        throw new AssertionError("seed " + seed + ", turn " + turn + ": " + message);
+    }
+}
@@ -0,0 +1,178 @@
+package uk.ac.bradford.ghostgame;
+
+import uk.ac.bradford.ghostgame.GameEngine.TileType;
+
+/**
+ * Regression check for games on a large world. The player walks across a
+ * 100000 by 100000 world, stopping to chase ghosts now and then, so the engine's
+ * window moves many times, and after every turn the check makes sure that
+ * the number of chunks held in memory stays within what the window needs
+ * plus the chunks with changed tiles, and that there are only a few of
+ * those. At the end the player must have crossed many windows' worth of the
+ * world, a tile changed in the first window must still be changed, and the
+ * same game played again must end in exactly the same state. Run with "ant check".
+ */
+public final class WorldCheck {
+
+    private static final int SIZE = 100000;
+
+    private static final long SEED = 1;
+
+    private static final int TURNS = 30000;
+
+    /**
+     * The number of windows' widths the player must have moved from where it
+     * started, across and down together.
+     */
+    private static final int MIN_WINDOWS_CROSSED = 8;
+
+    /**
+     * The most chunks with changed tiles the game may build up. Only sealed
+     * breaches and breaches that have released ghosts change a chunk.
+     */
+    private static final int MAX_CHANGED_CHUNKS = 64;
+
+    /**
+     * The player chases ghosts for the first CHASE_TURNS turns of every
+     * PHASE_TURNS, and walks on for the rest.
+     */
+    private static final int PHASE_TURNS = 1000;
+    private static final int CHASE_TURNS = 300;
+
+    private static final PlayerPolicy CHASE = new ChasePolicy();
+
+    private static final Command[] COMMANDS = Command.values();
+
+    /**
+     * The four commands that follow a DistanceField, which only steps left,
+     * right, up and down.
+     */
+    private static final Command[] STEPS = {Command.LEFT, Command.RIGHT, Command.UP, Command.DOWN};
+
+    /**
+     * This class only has static methods.
+     */
+    private WorldCheck() {
+    }
+
+    /**
+     * Runs the check.
+     *
+     * @param args Not used
+     */
+    public static void main(String[] args) {
+        GameEngine engine = play();
+        GameEngine again = play();
+        if (again.getStateHash() != engine.getStateHash()
+                || worldX(again) != worldX(engine) || worldY(again) != worldY(engine)) {
+            throw new AssertionError("the same world game ended differently when played again");
+        }
+        LevelWindow window = engine.getWindow();
+        ChunkedLevel world = window.getWorld();
+        System.out.printf("WorldCheck: %d turns on %dx%d, window moved %d times, player at %d,%d, "
+                + "captured %d, chunks generated %d, held %d, changed %d%n",
+                TURNS, SIZE, SIZE, window.getMoves(), worldX(engine), worldY(engine),
+                engine.getGhostsCaptured(), world.getChunksGenerated(), world.getChunksHeld(),
+                world.getChunksChanged());
+    }
+
+    /**
+     * Plays the game, checking the chunks held after every turn.
+     *
+     * @return the engine at the end of the game
+     */
+    private static GameEngine play() {
+        GameEngine engine = new GameEngine(SEED);
+        GameRandom rng = new GameRandom(SEED).split();
+        engine.startWorld(SIZE, SIZE);
+        ChunkedLevel world = engine.getWindow().getWorld();
+        int startX = worldX(engine);
+        int startY = worldY(engine);
+        //stands in for a sealed breach: a change the world must keep after
+        //the window has moved away from it
+        engine.getLevel().set(engine.getPlayer().getX(), engine.getPlayer().getY(), TileType.FLOOR2);
+        DistanceField route = new DistanceField(LevelWindow.SIZE, LevelWindow.SIZE);
+        int routeX = Integer.MIN_VALUE;
+        int routeY = Integer.MIN_VALUE;
+        for (int turn = 1; turn <= TURNS; turn++) {
+            if (engine.getWindowX() != routeX || engine.getWindowY() != routeY) {
+                planRoute(engine, route);
+                routeX = engine.getWindowX();
+                routeY = engine.getWindowY();
+            }
+            Command c = turn % PHASE_TURNS < CHASE_TURNS
+                    ? CHASE.nextCommand(engine, rng) : followRoute(engine, route, rng);
+            engine.playTurn(c);
+            if (world.getChunksHeld() > LevelWindow.CACHED_CHUNKS + world.getChunksChanged()) {
+                fail(turn, world.getChunksHeld() + " chunks held, only "
+                        + LevelWindow.CACHED_CHUNKS + " cached and " + world.getChunksChanged() + " changed");
+            }
+            if (world.getChunksChanged() > MAX_CHANGED_CHUNKS) {
+                fail(turn, world.getChunksChanged() + " chunks changed");
+            }
+        }
+        if (world.get(startX, startY) != TileType.FLOOR2 || world.getChunksChanged() == 0) {
+            fail(TURNS, "a tile changed in the first window was not kept");
+        }
+        int crossed = (Math.abs(worldX(engine) - startX) + Math.abs(worldY(engine) - startY)) / LevelWindow.SIZE;
+        if (crossed < MIN_WINDOWS_CROSSED) {
+            fail(TURNS, "the player only crossed " + crossed + " windows");
+        }
+        return engine;
+    }
+
+    /**
+     * Fills a field with the distance to the tile of the window furthest
+     * towards its bottom right corner that the player can reach, so the
+     * player can head for the far side of the window whatever walls are in
+     * the way.
+     */
+    private static void planRoute(GameEngine engine, DistanceField route) {
+        LevelGrid level = engine.getLevel();
+        Player p = engine.getPlayer();
+        route.compute(level, p.getX(), p.getY());
+        int goalX = p.getX();
+        int goalY = p.getY();
+        for (int y = 0; y < level.getHeight(); y++) {
+            for (int x = 0; x < level.getWidth(); x++) {
+                if (x + y > goalX + goalY && level.isPlayerOpen(x, y)
+                        && route.get(x, y) != DistanceField.UNREACHABLE) {
+                    goalX = x;
+                    goalY = y;
+                }
+            }
+        }
+        route.compute(level, goalX, goalY);
+    }
+
+    /**
+     * Chooses a step down the route, or a random move if no step is open
+     * and closer to the goal.
+     */
+    private static Command followRoute(GameEngine engine, DistanceField route, GameRandom rng) {
+        Player p = engine.getPlayer();
+        Command best = null;
+        int bestDistance = route.get(p.getX(), p.getY());
+        for (Command c : STEPS) {
+            int x = p.getX() + c.direction().dx();
+            int y = p.getY() + c.direction().dy();
+            if (engine.getLevel().isPlayerOpen(x, y) && route.get(x, y) < bestDistance) {
+                best = c;
+                bestDistance = route.get(x, y);
+            }
+        }
+        return best != null ? best : COMMANDS[rng.nextInt(COMMANDS.length)];
+    }
+
+    private static int worldX(GameEngine engine) {
+        return engine.getWindowX() + engine.getPlayer().getX();
+    }
+
+    private static int worldY(GameEngine engine) {
+        return engine.getWindowY() + engine.getPlayer().getY();
+    }
+
+    private static void fail(int turn, String message) {
+        throw new AssertionError("turn " + turn + ": " + message);
+    }
+}